@@ -0,0 +1,92 @@
+package com.code.block.rest_service.benchmark;
+
+import com.aayushatharva.brotli4j.encoder.Encoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.Brotli;
+import io.netty.handler.codec.compression.BrotliEncoder;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.compression.ZlibWrapper;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of compressing a {@code GET /items} response with the encoders the server offers. The compressed size of
+ * each configuration is printed once during setup, so the time per call can be weighed against the bytes saved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+    @Param({"gzip-1", "gzip-6", "deflate-6", "br-4"})
+    private String encoder;
+
+    @Param({"10", "1000"})
+    private int size;
+
+    private byte[] body;
+
+    @Setup
+    public void setup() {
+        List<JsonObject> titles = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            titles.add(new JsonObject().put("_id", new ObjectId().toHexString()).put("title", "title number " + i));
+        }
+        body = new JsonArray(titles).toBuffer().getBytes();
+        int compressed = compress();
+        System.out.printf("%n%s of %d items: %d -> %d bytes (%.1f%%)%n",
+                encoder, size, body.length, compressed, 100.0 * compressed / body.length);
+    }
+
+    @Benchmark
+    public int compress() {
+        EmbeddedChannel channel = new EmbeddedChannel(newEncoder());
+        channel.writeOutbound(Unpooled.wrappedBuffer(body));
+        channel.finish();
+        int bytes = 0;
+        for (ByteBuf chunk = channel.readOutbound(); chunk != null; chunk = channel.readOutbound()) {
+            bytes += chunk.readableBytes();
+            chunk.release();
+        }
+        return bytes;
+    }
+
+    private ChannelHandler newEncoder() {
+        String[] parts = encoder.split("-");
+        int level = Integer.parseInt(parts[1]);
+        switch (parts[0]) {
+            case "gzip":
+                return ZlibCodecFactory.newZlibEncoder(ZlibWrapper.GZIP, level);
+            case "deflate":
+                return ZlibCodecFactory.newZlibEncoder(ZlibWrapper.ZLIB, level);
+            case "br":
+                // loads the native encoder
+                Brotli.isAvailable();
+                return new BrotliEncoder(new Encoder.Parameters().setQuality(level));
+            default:
+                throw new IllegalArgumentException("Unknown encoder: " + encoder);
+        }
+    }
+}
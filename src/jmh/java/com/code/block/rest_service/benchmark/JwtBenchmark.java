@@ -0,0 +1,97 @@
+package com.code.block.rest_service.benchmark;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.JWTOptions;
+import io.vertx.ext.auth.PubSecKeyOptions;
+import io.vertx.ext.auth.User;
+import io.vertx.ext.auth.authentication.TokenCredentials;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.security.Key;
+import java.security.KeyStore;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token signing and verification. RS256 uses the RSA key of the test keystore, HS256 a shared secret.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtBenchmark {
+    private static final String KEYSTORE = "src/test/resources/keystore.jceks";
+    private static final String KEYSTORE_PASSWORD = "password";
+    private static final String KEY_ALIAS = "test";
+
+    @Param({"RS256", "HS256"})
+    private String algorithm;
+
+    private Vertx vertx;
+    private JWTAuth provider;
+    private JWTOptions jwtOptions;
+    private JsonObject claims;
+    private TokenCredentials credentials;
+
+    @Setup
+    public void setup() throws Exception {
+        vertx = Vertx.vertx();
+        JWTAuthOptions options = new JWTAuthOptions();
+        if (algorithm.startsWith("HS")) {
+            options.addPubSecKey(new PubSecKeyOptions().setAlgorithm(algorithm).setBuffer("benchmark-secret"));
+        } else {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            try (InputStream in = new FileInputStream(KEYSTORE)) {
+                keyStore.load(in, KEYSTORE_PASSWORD.toCharArray());
+            }
+            Key privateKey = keyStore.getKey(KEY_ALIAS, KEYSTORE_PASSWORD.toCharArray());
+            Key publicKey = keyStore.getCertificate(KEY_ALIAS).getPublicKey();
+            options.addPubSecKey(new PubSecKeyOptions().setAlgorithm(algorithm).setBuffer(pem("PRIVATE KEY", privateKey)))
+                    .addPubSecKey(new PubSecKeyOptions().setAlgorithm(algorithm).setBuffer(pem("PUBLIC KEY", publicKey)));
+        }
+        provider = JWTAuth.create(vertx, options);
+        jwtOptions = new JWTOptions().setAlgorithm(algorithm);
+        claims = new JsonObject().put("_id", "6412f0c2a8d3b54f1c2e9a71");
+        credentials = new TokenCredentials(provider.generateToken(claims, jwtOptions));
+    }
+
+    @TearDown
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Benchmark
+    public String sign() {
+        return provider.generateToken(claims, jwtOptions);
+    }
+
+    @Benchmark
+    public User verify() {
+        // JWT verification completes synchronously, the future is already resolved
+        return provider.authenticate(credentials).result();
+    }
+
+    private static String pem(String type, Key key) {
+        return "-----BEGIN " + type + "-----\n"
+                + Base64.getMimeEncoder().encodeToString(key.getEncoded())
+                + "\n-----END " + type + "-----\n";
+    }
+}
@@ -0,0 +1,41 @@
+package com.code.block.rest_service.benchmark;
+
+import com.code.block.rest_service.service.RestRouter;
+import io.vertx.core.buffer.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Body parsing and field validation of {@code /register} and {@code /login}, through
+ * {@link RestRouter#validateCredentials} on the buffered request body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestParsingBenchmark {
+
+    private final Buffer validBody = Buffer.buffer("{\"login\": \"user\", \"password\": \"pass\"}");
+    private final Buffer missingFieldBody = Buffer.buffer("{\"login\": \"user\", \"pass\": \"pass\"}");
+
+    @Benchmark
+    public String parseValidCredentials() {
+        return RestRouter.validateCredentials(validBody.toJsonObject());
+    }
+
+    @Benchmark
+    public String parseIncompleteCredentials() {
+        return RestRouter.validateCredentials(missingFieldBody.toJsonObject());
+    }
+}
@@ -0,0 +1,70 @@
+package com.code.block.rest_service.benchmark;
+
+import com.code.block.rest_service.utils.MediaFormat;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of {@code GET /items} responses: the former {@code List.toString()}, the {@link MediaFormat} encoding
+ * used for pages, and the per-item chunks written by the streaming response in {@code ResponseUtils}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseEncodingBenchmark {
+
+    @Param({"100", "10000"})
+    private int size;
+
+    private List<JsonObject> titles;
+
+    @Setup
+    public void setup() {
+        titles = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            titles.add(new JsonObject().put("_id", new ObjectId().toHexString()).put("title", "title number " + i));
+        }
+    }
+
+    @Benchmark
+    public String listToString() {
+        return titles.toString();
+    }
+
+    @Benchmark
+    public Buffer pageEncode() {
+        return MediaFormat.JSON.encode(titles);
+    }
+
+    @Benchmark
+    public void streamedChunks(Blackhole blackhole) {
+        MediaFormat format = MediaFormat.JSON;
+        boolean first = true;
+        for (JsonObject title : titles) {
+            Buffer prefix = first ? format.arrayStart() : format.separator();
+            Buffer encoded = format.encodeItem(title);
+            blackhole.consume(Buffer.buffer(prefix.length() + encoded.length()).appendBuffer(prefix).appendBuffer(encoded));
+            first = false;
+        }
+    }
+}
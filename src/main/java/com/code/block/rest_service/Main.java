@@ -1,5 +1,6 @@
 package com.code.block.rest_service;
 
+import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
 import lombok.extern.slf4j.Slf4j;
 
@@ -7,6 +8,15 @@ import lombok.extern.slf4j.Slf4j;
 public class Main {
   public static void main(String[] args) {
     Vertx vertx = Vertx.vertx();
-    vertx.deployVerticle(new RestServiceFactory().buildRestService());
+    RestServiceFactory factory = new RestServiceFactory(vertx);
+    DeploymentOptions deploymentOptions = factory.getDeploymentOptions();
+    factory.bootstrap()
+      .compose(v -> vertx.deployVerticle(factory::buildRestService, deploymentOptions))
+      .onSuccess(id -> log.info("Deployed {} RestService instances", deploymentOptions.getInstances()))
+      .compose(id -> factory.warmUp())
+      .onFailure(cause -> {
+        log.error("RestService deployment failed, cause: {}", cause.getMessage());
+        vertx.close();
+      });
   }
 }
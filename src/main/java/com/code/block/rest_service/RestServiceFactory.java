@@ -1,19 +1,297 @@
 package com.code.block.rest_service;
 
+import com.aayushatharva.brotli4j.encoder.Encoder;
+import com.code.block.rest_service.metrics.Metrics;
+import com.code.block.rest_service.repository.CoalescingStorage;
+import com.code.block.rest_service.repository.InMemoryStorage;
+import com.code.block.rest_service.repository.MeteredStorage;
 import com.code.block.rest_service.repository.MongoDao;
+import com.code.block.rest_service.repository.ResilientStorage;
+import com.code.block.rest_service.repository.Storage;
+import com.code.block.rest_service.repository.StorageGuard;
+import com.code.block.rest_service.repository.TitleCache;
+import com.code.block.rest_service.repository.TitleWriteBatcher;
+import com.code.block.rest_service.service.AdmissionControl;
+import com.code.block.rest_service.service.CachingJWTAuthHandler;
+import com.code.block.rest_service.service.HealthCheck;
+import com.code.block.rest_service.service.ItemFeed;
+import com.code.block.rest_service.service.PasswordHasher;
+import com.code.block.rest_service.service.RateLimiter;
 import com.code.block.rest_service.service.RestRouter;
 import com.code.block.rest_service.service.RestService;
+import com.code.block.rest_service.service.TitleSearch;
+import com.code.block.rest_service.service.TokenIssuer;
+import com.code.block.rest_service.service.TokenRevocations;
+import com.code.block.rest_service.service.WarmUp;
+import io.netty.handler.codec.compression.Brotli;
+import io.netty.handler.codec.compression.CompressionOptions;
+import io.netty.handler.codec.compression.StandardCompressionOptions;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.http.Http2Settings;
+import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.JWTOptions;
 import io.vertx.ext.auth.KeyStoreOptions;
+import io.vertx.ext.auth.PubSecKeyOptions;
 import io.vertx.ext.auth.jwt.JWTAuth;
 import io.vertx.ext.auth.jwt.JWTAuthOptions;
 import io.vertx.ext.mongo.MongoClient;
+import io.vertx.ext.web.AllowForwardHeaders;
 import io.vertx.ext.web.handler.impl.JWTAuthHandlerImpl;
 
+/**
+ * Builds {@link RestService} instances that all share the same {@link Vertx}, storage and JWT provider,
+ * so the service can be deployed once per event loop without creating extra Vert.x runtimes.
+ * The storage is MongoDB unless {@value STORAGE_PROPERTY} is set to {@code memory}.
+ */
 public class RestServiceFactory {
+    public static final String INSTANCES_PROPERTY = "rest.instances";
+    public static final String STORAGE_PROPERTY = "rest.storage";
+    public static final String WRITE_BEHIND_PROPERTY = "rest.titles.writeBehind";
+    public static final String WRITE_BEHIND_INTERVAL_PROPERTY = "rest.titles.flushIntervalMs";
+    public static final String WRITE_BEHIND_BATCH_PROPERTY = "rest.titles.maxBatchSize";
+    public static final String CACHE_USERS_PROPERTY = "rest.cache.maxUsers";
+    public static final String CACHE_TTL_PROPERTY = "rest.cache.ttlMs";
+    public static final String CACHE_ITEMS_PROPERTY = "rest.cache.maxItemsPerUser";
+    public static final String COALESCING_ITEMS_PROPERTY = "rest.coalescing.maxSharedItems";
+    public static final String TOKEN_CACHE_SIZE_PROPERTY = "rest.tokenCache.maxEntries";
+    public static final String TOKEN_CACHE_TTL_PROPERTY = "rest.tokenCache.maxTtlMs";
+    public static final String JWT_ALGORITHM_PROPERTY = "rest.jwt.algorithm";
+    public static final String JWT_SECRET_PROPERTY = "rest.jwt.secret";
+    public static final String JWT_EXPIRES_PROPERTY = "rest.jwt.expiresInSeconds";
+    public static final String SIGNING_THREADS_PROPERTY = "rest.jwt.signingThreads";
+    public static final String SIGNING_QUEUE_PROPERTY = "rest.jwt.maxPendingSignatures";
+    public static final String HASHING_THREADS_PROPERTY = "rest.password.threads";
+    public static final String HASHING_QUEUE_PROPERTY = "rest.password.maxPending";
+    public static final String HASHING_TARGET_PROPERTY = "rest.password.targetMs";
+    public static final String HASHING_MIN_ITERATIONS_PROPERTY = "rest.password.minIterations";
+    public static final String SERVER_TIMING_PROPERTY = "rest.timing.serverTiming";
+    public static final String SLOW_REQUEST_PROPERTY = "rest.timing.slowRequestMs";
+    public static final String SLOW_REQUEST_SAMPLE_PROPERTY = "rest.timing.slowRequestSampleRate";
+    public static final String HTTP2_MAX_STREAMS_PROPERTY = "rest.http2.maxConcurrentStreams";
+    public static final String HTTP2_WINDOW_PROPERTY = "rest.http2.connectionWindowBytes";
+    public static final String COMPRESSION_PROPERTY = "rest.compression.enabled";
+    public static final String COMPRESSION_ALGORITHMS_PROPERTY = "rest.compression.algorithms";
+    public static final String COMPRESSION_LEVEL_PROPERTY = "rest.compression.level";
+    public static final String COMPRESSION_BROTLI_QUALITY_PROPERTY = "rest.compression.brotliQuality";
+    public static final String COMPRESSION_MIN_BYTES_PROPERTY = "rest.compression.minBytes";
+    public static final String CREDENTIALS_BODY_LIMIT_PROPERTY = "rest.body.maxCredentialsBytes";
+    public static final String ITEM_BODY_LIMIT_PROPERTY = "rest.body.maxItemBytes";
+    public static final String MAX_IN_FLIGHT_PROPERTY = "rest.admission.maxInFlight";
+    public static final String USER_RATE_PROPERTY = "rest.rateLimit.userPerSecond";
+    public static final String USER_BURST_PROPERTY = "rest.rateLimit.userBurst";
+    public static final String ANONYMOUS_RATE_PROPERTY = "rest.rateLimit.anonymousPerSecond";
+    public static final String ANONYMOUS_BURST_PROPERTY = "rest.rateLimit.anonymousBurst";
+    public static final String RATE_LIMIT_KEYS_PROPERTY = "rest.rateLimit.maxKeys";
+    public static final String ALLOW_FORWARD_PROPERTY = "rest.http.allowForward";
+    public static final String STORAGE_IN_FLIGHT_PROPERTY = "rest.storage.maxInFlight";
+    public static final String STORAGE_TIMEOUT_PROPERTY = "rest.storage.timeoutMs";
+    public static final String STORAGE_FAILURES_PROPERTY = "rest.storage.failureThreshold";
+    public static final String STORAGE_OPEN_PROPERTY = "rest.storage.openMs";
+    public static final String WARM_UP_CONNECTIONS_PROPERTY = "rest.warmUp.connections";
+    public static final String WARM_UP_ITERATIONS_PROPERTY = "rest.warmUp.iterations";
+    public static final String HEALTH_CACHE_PROPERTY = "rest.health.cacheMs";
+    public static final String REVOCATION_EXPECTED_PROPERTY = "rest.revocation.expectedTokens";
+    public static final String REVOCATION_FALSE_POSITIVE_PROPERTY = "rest.revocation.falsePositiveRate";
+    public static final String REVOCATION_PRUNE_PROPERTY = "rest.revocation.pruneIntervalMs";
+    public static final String FEED_CONNECTIONS_PROPERTY = "rest.feed.maxConnections";
+    public static final String FEED_PENDING_EVENTS_PROPERTY = "rest.feed.maxPendingEvents";
+    public static final String FEED_BUFFER_PROPERTY = "rest.feed.maxBufferedBytes";
+    public static final String FEED_HEARTBEAT_PROPERTY = "rest.feed.heartbeatMs";
+    public static final String SEARCH_MAX_TITLES_PROPERTY = "rest.search.maxTitles";
+    public static final String SEARCH_REVALIDATE_PROPERTY = "rest.search.revalidateMs";
+
+    private final Vertx vertx;
+    private final Metrics metrics = createMetrics();
+    private final HttpServerOptions serverOptions = createServerOptions();
+    private final AdmissionControl admissionControl = createAdmissionControl();
+    private final HealthCheck healthCheck = new HealthCheck(Long.getLong(HEALTH_CACHE_PROPERTY, 1_000));
+    private final JWTAuth jwtProvider;
+    private final JWTAuthHandlerImpl jwtHandler;
+    private final TokenIssuer tokenIssuer;
+    private final PasswordHasher passwordHasher;
+    private final TitleWriteBatcher titleWriteBatcher;
+    private final TitleCache titleCache;
+    private final StorageGuard usersGuard;
+    private final StorageGuard titlesGuard;
+    private final CoalescingStorage coalescingStorage;
+    private final Storage storage;
+    private final TokenRevocations tokenRevocations;
+    private final ItemFeed itemFeed;
+    private final TitleSearch titleSearch;
+
+    public RestServiceFactory(Vertx vertx) {
+        this.vertx = vertx;
+        this.jwtProvider = getJwtProvider();
+        this.jwtHandler = getJwtHandler();
+        this.tokenIssuer = createTokenIssuer();
+        this.passwordHasher = createPasswordHasher();
+        if ("memory".equals(System.getProperty(STORAGE_PROPERTY, "mongo"))) {
+            this.titleWriteBatcher = null;
+            this.titleCache = null;
+            this.usersGuard = null;
+            this.titlesGuard = null;
+            this.coalescingStorage = null;
+            this.storage = new MeteredStorage(new InMemoryStorage(), metrics);
+        } else {
+            MongoClient mongoClient = getMongoClient();
+            this.titleWriteBatcher = createTitleWriteBatcher(mongoClient);
+            this.titleCache = createTitleCache();
+            this.usersGuard = createStorageGuard("users");
+            this.titlesGuard = createStorageGuard("titles");
+            this.coalescingStorage = new CoalescingStorage(new ResilientStorage(
+                    new MongoDao(mongoClient, titleWriteBatcher, titleCache), usersGuard, titlesGuard),
+                    Integer.getInteger(COALESCING_ITEMS_PROPERTY, 1_000));
+            this.storage = new MeteredStorage(coalescingStorage, metrics);
+        }
+        this.tokenRevocations = new TokenRevocations(vertx, storage,
+                Integer.getInteger(REVOCATION_EXPECTED_PROPERTY, 100_000),
+                Double.parseDouble(System.getProperty(REVOCATION_FALSE_POSITIVE_PROPERTY, "0.01")),
+                Long.getLong(REVOCATION_PRUNE_PROPERTY, 60_000));
+        this.itemFeed = new ItemFeed(vertx,
+                Integer.getInteger(FEED_CONNECTIONS_PROPERTY, 10_000),
+                Integer.getInteger(FEED_PENDING_EVENTS_PROPERTY, 100),
+                Integer.getInteger(FEED_BUFFER_PROPERTY, 65_536),
+                Long.getLong(FEED_HEARTBEAT_PROPERTY, 15_000));
+        this.titleSearch = new TitleSearch(storage,
+                Long.getLong(SEARCH_MAX_TITLES_PROPERTY, 1_000_000),
+                Long.getLong(SEARCH_REVALIDATE_PROPERTY, 1_000));
+        healthCheck.addCheck("storage", () -> storage.getTitlesVersion(WarmUp.WARM_UP_USER_ID));
+        registerStats();
+    }
+
     public RestService buildRestService() {
-        return new RestService(new RestRouter(getJwtHandler(), getJwtProvider(), new MongoDao(getMongoClient())));
+        return new RestService(new RestRouter(jwtHandler, tokenIssuer, passwordHasher, storage, metrics, admissionControl,
+                healthCheck, tokenRevocations, itemFeed, titleSearch),
+                serverOptions, Integer.getInteger(COMPRESSION_MIN_BYTES_PROPERTY, 1_024),
+                Long.getLong(CREDENTIALS_BODY_LIMIT_PROPERTY, RestService.DEFAULT_CREDENTIALS_BODY_LIMIT),
+                Long.getLong(ITEM_BODY_LIMIT_PROPERTY, RestService.DEFAULT_ITEM_BODY_LIMIT),
+                AllowForwardHeaders.valueOf(System.getProperty(ALLOW_FORWARD_PROPERTY, "NONE")));
+    }
+
+    /**
+     * @return the metrics shared by all instances and served on {@code /metrics}
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    private static Metrics createMetrics() {
+        return new Metrics(Boolean.getBoolean(SERVER_TIMING_PROPERTY),
+                Long.getLong(SLOW_REQUEST_PROPERTY, 1_000),
+                Double.parseDouble(System.getProperty(SLOW_REQUEST_SAMPLE_PROPERTY, "0.1")));
+    }
+
+    /**
+     * HTTP/2 is served in cleartext (h2c) through upgrade and prior knowledge next to HTTP/1.1; Vert.x turns it off
+     * with {@code -Dvertx.disableH2c=true}. Compression follows the client's {@code Accept-Encoding}.
+     */
+    private static HttpServerOptions createServerOptions() {
+        HttpServerOptions options = new HttpServerOptions()
+                .setInitialSettings(new Http2Settings()
+                        .setMaxConcurrentStreams(Long.getLong(HTTP2_MAX_STREAMS_PROPERTY, 100)))
+                .setHttp2ConnectionWindowSize(Integer.getInteger(HTTP2_WINDOW_PROPERTY, 1_048_576));
+        if (!Boolean.parseBoolean(System.getProperty(COMPRESSION_PROPERTY, "true"))) {
+            return options;
+        }
+        int level = Integer.getInteger(COMPRESSION_LEVEL_PROPERTY, 6);
+        options.setCompressionSupported(true).setCompressionLevel(level);
+        for (String algorithm : System.getProperty(COMPRESSION_ALGORITHMS_PROPERTY, "gzip,deflate").split(",")) {
+            options.addCompressor(compressor(algorithm.trim(), level));
+        }
+        return options;
+    }
+
+    private static CompressionOptions compressor(String algorithm, int level) {
+        switch (algorithm) {
+            case "gzip":
+                return StandardCompressionOptions.gzip(level, 15, 8);
+            case "deflate":
+                return StandardCompressionOptions.deflate(level, 15, 8);
+            case "br":
+                if (!Brotli.isAvailable()) {
+                    throw new IllegalStateException("Brotli is not available on this platform", Brotli.cause());
+                }
+                return StandardCompressionOptions.brotli(new Encoder.Parameters()
+                        .setQuality(Integer.getInteger(COMPRESSION_BROTLI_QUALITY_PROPERTY, 4)));
+            default:
+                throw new IllegalStateException("Unsupported " + COMPRESSION_ALGORITHMS_PROPERTY + " entry: " + algorithm);
+        }
+    }
+
+    private static AdmissionControl createAdmissionControl() {
+        return new AdmissionControl(Integer.getInteger(MAX_IN_FLIGHT_PROPERTY, 1_000),
+                createRateLimiter(USER_RATE_PROPERTY, "50", USER_BURST_PROPERTY, 100),
+                createRateLimiter(ANONYMOUS_RATE_PROPERTY, "10", ANONYMOUS_BURST_PROPERTY, 20));
+    }
+
+    /**
+     * @return the limiter or {@code null} when its rate is {@code 0}
+     */
+    private static RateLimiter createRateLimiter(String rateProperty, String defaultRate, String burstProperty, int defaultBurst) {
+        double rate = Double.parseDouble(System.getProperty(rateProperty, defaultRate));
+        if (rate <= 0) {
+            return null;
+        }
+        return new RateLimiter(rate, Integer.getInteger(burstProperty, defaultBurst),
+                Integer.getInteger(RATE_LIMIT_KEYS_PROPERTY, 100_000));
+    }
+
+    private void registerStats() {
+        metrics.registerStats("admission", admissionControl::stats);
+        metrics.registerStats("health", healthCheck::stats);
+        metrics.registerStats("token_revocations", tokenRevocations::stats);
+        metrics.registerStats("item_feed", itemFeed::stats);
+        metrics.registerStats("title_search", titleSearch::stats);
+        metrics.registerStats("token_issuer", tokenIssuer::stats);
+        metrics.registerStats("password_hasher", passwordHasher::stats);
+        if (jwtHandler instanceof CachingJWTAuthHandler) {
+            metrics.registerStats("token_cache", ((CachingJWTAuthHandler) jwtHandler)::stats);
+        }
+        if (titleCache != null) {
+            metrics.registerStats("title_cache", titleCache::stats);
+        }
+        if (titleWriteBatcher != null) {
+            metrics.registerStats("title_write_batcher", titleWriteBatcher::stats);
+        }
+        if (usersGuard != null) {
+            metrics.registerStats("storage_guard_users", usersGuard::stats);
+            metrics.registerStats("storage_guard_titles", titlesGuard::stats);
+        }
+        if (coalescingStorage != null) {
+            metrics.registerStats("storage_coalescing", coalescingStorage::stats);
+        }
+    }
+
+    /**
+     * Prepares shared resources that must exist before the first request: the storage indexes and the persisted
+     * token revocations.
+     */
+    public Future<Void> bootstrap() {
+        return storage.ensureIndexes()
+                .compose(v -> tokenRevocations.load());
+    }
+
+    /**
+     * Warms the deployed instances up and then lets {@code /health/ready} report them ready.
+     */
+    public Future<Void> warmUp() {
+        return new WarmUp(vertx, tokenIssuer, jwtProvider, passwordHasher, storage,
+                Integer.getInteger(WARM_UP_CONNECTIONS_PROPERTY, 10),
+                Integer.getInteger(WARM_UP_ITERATIONS_PROPERTY, 50))
+                .run()
+                .onComplete(res -> healthCheck.markWarmedUp());
+    }
+
+    public HealthCheck getHealthCheck() {
+        return healthCheck;
+    }
+
+    public DeploymentOptions getDeploymentOptions() {
+        return new DeploymentOptions()
+                .setInstances(Integer.getInteger(INSTANCES_PROPERTY, Runtime.getRuntime().availableProcessors()));
     }
 
     private MongoClient getMongoClient() {
@@ -21,22 +299,113 @@ public class RestServiceFactory {
                 .put("connection_string", "mongodb://localhost:27017")
                 .put("db_name", "test");
 
-        return MongoClient.create(Vertx.vertx(), mongoConfig);
+        return MongoClient.create(vertx, mongoConfig);
+    }
+
+    /**
+     * @return the write-behind stage for titles or {@code null} when it is disabled
+     */
+    public TitleWriteBatcher getTitleWriteBatcher() {
+        return titleWriteBatcher;
+    }
+
+    private TitleWriteBatcher createTitleWriteBatcher(MongoClient mongoClient) {
+        if (!Boolean.getBoolean(WRITE_BEHIND_PROPERTY)) {
+            return null;
+        }
+        return new TitleWriteBatcher(vertx, mongoClient,
+                Long.getLong(WRITE_BEHIND_INTERVAL_PROPERTY, 5),
+                Integer.getInteger(WRITE_BEHIND_BATCH_PROPERTY, 100));
+    }
+
+    private StorageGuard createStorageGuard(String collection) {
+        return new StorageGuard(vertx, collection,
+                Integer.getInteger(STORAGE_IN_FLIGHT_PROPERTY, 200),
+                Long.getLong(STORAGE_TIMEOUT_PROPERTY, 2_000),
+                Integer.getInteger(STORAGE_FAILURES_PROPERTY, 5),
+                Long.getLong(STORAGE_OPEN_PROPERTY, 5_000));
     }
 
+    public TokenIssuer getTokenIssuer() {
+        return tokenIssuer;
+    }
+
+    public PasswordHasher getPasswordHasher() {
+        return passwordHasher;
+    }
+
+    /**
+     * @return the per-user title cache or {@code null} when it is disabled
+     */
+    public TitleCache getTitleCache() {
+        return titleCache;
+    }
+
+    private TitleCache createTitleCache() {
+        int maxUsers = Integer.getInteger(CACHE_USERS_PROPERTY, 10_000);
+        if (maxUsers <= 0) {
+            return null;
+        }
+        return new TitleCache(maxUsers,
+                Long.getLong(CACHE_TTL_PROPERTY, 30_000),
+                Integer.getInteger(CACHE_ITEMS_PROPERTY, 1_000));
+    }
+
+    /**
+     * HMAC algorithms (HS256/384/512) sign with the {@value JWT_SECRET_PROPERTY} secret. Any other algorithm, e.g.
+     * RS256, ES256 or EdDSA, uses the key stored under the alias of the same name in {@code keystore.jceks}.
+     */
     private JWTAuthOptions getJWTConfig() {
-        return new JWTAuthOptions()
+        String algorithm = getJwtAlgorithm();
+        JWTAuthOptions options = new JWTAuthOptions()
+                .setJWTOptions(new JWTOptions().setAlgorithm(algorithm));
+        if (algorithm.startsWith("HS")) {
+            String secret = System.getProperty(JWT_SECRET_PROPERTY);
+            if (secret == null) {
+                throw new IllegalStateException(JWT_SECRET_PROPERTY + " is required for algorithm " + algorithm);
+            }
+            return options.addPubSecKey(new PubSecKeyOptions()
+                    .setAlgorithm(algorithm)
+                    .setBuffer(secret));
+        }
+        return options
                 .setKeyStore(new KeyStoreOptions()
                         .setPath("keystore.jceks")
                         .setPassword("password"));
     }
 
+    private String getJwtAlgorithm() {
+        return System.getProperty(JWT_ALGORITHM_PROPERTY, "RS256");
+    }
+
+    private TokenIssuer createTokenIssuer() {
+        JWTOptions jwtOptions = new JWTOptions()
+                .setAlgorithm(getJwtAlgorithm())
+                .setExpiresInSeconds(Integer.getInteger(JWT_EXPIRES_PROPERTY, 3_600));
+        return new TokenIssuer(vertx, jwtProvider, jwtOptions,
+                Integer.getInteger(SIGNING_THREADS_PROPERTY, 2),
+                Integer.getInteger(SIGNING_QUEUE_PROPERTY, 1_000),
+                metrics.jwtSign());
+    }
+
     private JWTAuth getJwtProvider() {
-        return  JWTAuth.create(Vertx.vertx(), getJWTConfig());
+        return JWTAuth.create(vertx, getJWTConfig());
     }
 
     private JWTAuthHandlerImpl getJwtHandler() {
-        return new JWTAuthHandlerImpl(getJwtProvider(), null);
+        int maxEntries = Integer.getInteger(TOKEN_CACHE_SIZE_PROPERTY, 10_000);
+        if (maxEntries <= 0) {
+            return new JWTAuthHandlerImpl(jwtProvider, null);
+        }
+        return new CachingJWTAuthHandler(jwtProvider, maxEntries, Long.getLong(TOKEN_CACHE_TTL_PROPERTY, 300_000));
+    }
+
+    private PasswordHasher createPasswordHasher() {
+        return new PasswordHasher(vertx,
+                Integer.getInteger(HASHING_THREADS_PROPERTY, Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+                Integer.getInteger(HASHING_QUEUE_PROPERTY, 100),
+                Long.getLong(HASHING_TARGET_PROPERTY, 50),
+                Integer.getInteger(HASHING_MIN_ITERATIONS_PROPERTY, 100_000));
     }
 
 }
@@ -0,0 +1,227 @@
+package com.code.block.rest_service.metrics;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Route;
+import io.vertx.ext.web.RoutingContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Request, storage, JWT and event-loop metrics, exposed in the Prometheus text format. Meters are created once per
+ * route or operation and then only incremented, without locks. Routes are keyed by their declared path rather than
+ * the request URI and by method, with methods outside the standard set counted as {@value OTHER_METHOD}, so clients
+ * cannot create new series.
+ * Optionally every request also gets a {@link RequestTiming}, reported in a {@code Server-Timing} header and, for
+ * a sample of slow requests, in the {@code slow-requests} log.
+ * Safe to share between verticle instances.
+ */
+@Slf4j(topic = "slow-requests")
+public class Metrics {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+    private static final String PREFIX = "rest_";
+    private static final String UNMATCHED_ROUTE = "unmatched";
+    private static final String OTHER_METHOD = "OTHER";
+    private static final Set<HttpMethod> STANDARD_METHODS = Set.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.POST,
+            HttpMethod.PUT, HttpMethod.DELETE, HttpMethod.CONNECT, HttpMethod.OPTIONS, HttpMethod.TRACE, HttpMethod.PATCH);
+    private static final long LAG_INTERVAL_MS = 100;
+
+    private final ConcurrentMap<String, ConcurrentMap<String, RouteMetrics>> routes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, OperationTimer> storage = new ConcurrentHashMap<>();
+    private final OperationTimer jwtSign = new OperationTimer();
+    private final OperationTimer jwtVerify = new OperationTimer();
+    private final LongAdder inFlight = new LongAdder();
+    private final LatencyHistogram eventLoopLag = new LatencyHistogram();
+    private final Map<String, Supplier<JsonObject>> stats = new ConcurrentHashMap<>();
+    private final boolean serverTiming;
+    private final long slowRequestNanos;
+    private final double slowRequestSampleRate;
+
+    public Metrics() {
+        this(false, 0, 0);
+    }
+
+    /**
+     * @param serverTiming          whether responses carry the phase timings in a {@code Server-Timing} header
+     * @param slowRequestMillis     duration from which requests are slow, {@code 0} disables the slow-request log
+     * @param slowRequestSampleRate share of the slow requests that are logged, from 0 to 1
+     */
+    public Metrics(boolean serverTiming, long slowRequestMillis, double slowRequestSampleRate) {
+        this.serverTiming = serverTiming;
+        this.slowRequestNanos = TimeUnit.MILLISECONDS.toNanos(slowRequestMillis);
+        this.slowRequestSampleRate = slowRequestSampleRate;
+    }
+
+    /**
+     * Counts the request as in flight and records its route, status and duration once the response is done.
+     * Has to be the first handler of every route it measures; routes whose responses stay open, like event
+     * streams, are registered before it.
+     * <p>
+     * Recording is not allocation-free: each request costs its end handler, plus a {@link RequestTiming} while
+     * timing or the slow-request log is on and a header handler with {@code Server-Timing}. Vert.x Web only hands
+     * the routing context to handlers registered per request, and allocates more than that for every request anyway.
+     */
+    public void track(RoutingContext routingContext) {
+        long start = System.nanoTime();
+        inFlight.increment();
+        RequestTiming timing = serverTiming || slowRequestNanos > 0 ? RequestTiming.start(routingContext, start) : null;
+        if (serverTiming) {
+            HttpServerResponse response = routingContext.response();
+            routingContext.addHeadersEndHandler(v -> response.putHeader(SERVER_TIMING_HEADER, timing.serverTiming()));
+        }
+        routingContext.addEndHandler(res -> {
+            inFlight.decrement();
+            long elapsed = System.nanoTime() - start;
+            route(routingContext).record(routingContext.response().getStatusCode(), elapsed);
+            if (slowRequestNanos > 0 && elapsed >= slowRequestNanos
+                    && ThreadLocalRandom.current().nextDouble() < slowRequestSampleRate) {
+                logSlowRequest(routingContext, timing);
+            }
+        });
+        routingContext.next();
+    }
+
+    /**
+     * Answers with all metrics in the Prometheus text format.
+     */
+    public void scrape(RoutingContext routingContext) {
+        routingContext.response()
+                .putHeader("Content-Type", CONTENT_TYPE)
+                .end(render());
+    }
+
+    /**
+     * Measures how late a timer fires on the event loop of the calling verticle. The timer stops with the verticle.
+     */
+    public void monitorEventLoop(Vertx vertx) {
+        long expected = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LAG_INTERVAL_MS);
+        vertx.setTimer(LAG_INTERVAL_MS, id -> {
+            eventLoopLag.record(Math.max(0, System.nanoTime() - expected));
+            monitorEventLoop(vertx);
+        });
+    }
+
+    public OperationTimer storage(String operation) {
+        return storage.computeIfAbsent(operation, name -> new OperationTimer());
+    }
+
+    public OperationTimer jwtSign() {
+        return jwtSign;
+    }
+
+    public OperationTimer jwtVerify() {
+        return jwtVerify;
+    }
+
+    /**
+     * Exposes every numeric field of the component's {@code stats()} as a gauge named
+     * {@code rest_<component>_<field>}, read at scrape time.
+     */
+    public void registerStats(String component, Supplier<JsonObject> supplier) {
+        stats.put(component, supplier);
+    }
+
+    public String render() {
+        StringBuilder out = new StringBuilder(4096);
+
+        header(out, "http_requests_total", "counter", "Requests by declared route, method and status code");
+        forEachRoute((labels, metrics) -> metrics.writeStatuses(out, labels));
+        header(out, "http_request_duration_seconds", "histogram", "Time from routing to the end of the response");
+        forEachRoute((labels, metrics) -> metrics.latency.write(out, PREFIX + "http_request_duration_seconds", labels));
+        header(out, "http_requests_in_flight", "gauge", "Requests routed but not answered yet");
+        out.append(PREFIX).append("http_requests_in_flight ").append(inFlight.sum()).append('\n');
+
+        header(out, "storage_duration_seconds", "histogram", "Storage call time by operation");
+        storage.forEach((operation, timer) ->
+                timer.getLatency().write(out, PREFIX + "storage_duration_seconds", "operation=\"" + operation + "\""));
+        header(out, "storage_errors_total", "counter", "Failed storage calls by operation");
+        storage.forEach((operation, timer) -> out.append(PREFIX).append("storage_errors_total{operation=\"")
+                .append(operation).append("\"} ").append(timer.getErrors()).append('\n'));
+
+        header(out, "jwt_duration_seconds", "histogram", "Token signing and verification time");
+        jwtSign.getLatency().write(out, PREFIX + "jwt_duration_seconds", "operation=\"sign\"");
+        jwtVerify.getLatency().write(out, PREFIX + "jwt_duration_seconds", "operation=\"verify\"");
+        header(out, "jwt_errors_total", "counter", "Failed token signatures and verifications");
+        out.append(PREFIX).append("jwt_errors_total{operation=\"sign\"} ").append(jwtSign.getErrors()).append('\n');
+        out.append(PREFIX).append("jwt_errors_total{operation=\"verify\"} ").append(jwtVerify.getErrors()).append('\n');
+
+        header(out, "event_loop_lag_seconds", "histogram", "Delay of a " + LAG_INTERVAL_MS + " ms timer on the event loops");
+        eventLoopLag.write(out, PREFIX + "event_loop_lag_seconds", "");
+
+        stats.forEach((component, supplier) -> supplier.get().forEach(field -> {
+            if (field.getValue() instanceof Number) {
+                String name = component + "_" + snakeCase(field.getKey());
+                header(out, name, "gauge", null);
+                out.append(PREFIX).append(name).append(' ').append(field.getValue()).append('\n');
+            }
+        }));
+        return out.toString();
+    }
+
+    private static void logSlowRequest(RoutingContext routingContext, RequestTiming timing) {
+        log.warn("{} {} answered {} slowly: {}", routingContext.request().method(), routingContext.request().path(),
+                routingContext.response().getStatusCode(), timing.serverTiming());
+    }
+
+    private RouteMetrics route(RoutingContext routingContext) {
+        Route route = routingContext.currentRoute();
+        String path = route == null || route.getPath() == null ? UNMATCHED_ROUTE : route.getPath();
+        HttpMethod method = routingContext.request().method();
+        return routes.computeIfAbsent(path, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(STANDARD_METHODS.contains(method) ? method.name() : OTHER_METHOD, key -> new RouteMetrics());
+    }
+
+    private void forEachRoute(RouteConsumer consumer) {
+        routes.forEach((path, byMethod) -> byMethod.forEach((method, metrics) ->
+                consumer.accept("route=\"" + path + "\",method=\"" + method + "\"", metrics)));
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        if (help != null) {
+            out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        }
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String snakeCase(String camelCase) {
+        return camelCase.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toLowerCase();
+    }
+
+    private interface RouteConsumer {
+        void accept(String labels, RouteMetrics metrics);
+    }
+
+    private static class RouteMetrics {
+        private final AtomicLongArray statuses = new AtomicLongArray(600);
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private void record(int status, long nanos) {
+            if (status >= 0 && status < statuses.length()) {
+                statuses.incrementAndGet(status);
+            }
+            latency.record(nanos);
+        }
+
+        private void writeStatuses(StringBuilder out, String labels) {
+            for (int status = 0; status < statuses.length(); status++) {
+                long count = statuses.get(status);
+                if (count > 0) {
+                    out.append(PREFIX).append("http_requests_total{").append(labels)
+                            .append(",status=\"").append(status).append("\"} ").append(count).append('\n');
+                }
+            }
+        }
+    }
+}
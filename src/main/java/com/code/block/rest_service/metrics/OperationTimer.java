@@ -0,0 +1,36 @@
+package com.code.block.rest_service.metrics;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Duration and failure count of one kind of operation, e.g. a storage call or a token signature.
+ */
+public class OperationTimer {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    public void record(long startNanos, boolean succeeded) {
+        latency.record(System.nanoTime() - startNanos);
+        if (!succeeded) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * @return a completion handler recording the time since {@code startNanos} and whether the operation failed
+     */
+    public <T> Handler<AsyncResult<T>> since(long startNanos) {
+        return res -> record(startNanos, res.succeeded());
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+}
@@ -0,0 +1,125 @@
+package com.code.block.rest_service.metrics;
+
+import io.vertx.core.Future;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Time a single request spent in each phase, e.g. reading the body, verifying the token or waiting for storage.
+ * A phase can be entered several times; its durations add up. Phases still open when the timing is rendered count
+ * until that moment. Used from the event loop of the request only.
+ */
+public class RequestTiming {
+    private static final String KEY = "requestTiming";
+    private static final Phase[] PHASES = Phase.values();
+    private static final RequestTiming DISABLED = new RequestTiming(0, false);
+
+    public enum Phase {
+        BODY("body"),
+        AUTH("auth"),
+        VALIDATION("validation"),
+        HASH("hash"),
+        STORAGE("storage"),
+        SIGN("sign"),
+        SERIALIZATION("serialize");
+
+        private final String metricName;
+
+        Phase(String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+    private final long startNanos;
+    private final boolean enabled;
+    private final long[] nanos = new long[PHASES.length];
+    private final long[] openedAt = new long[PHASES.length];
+
+    private RequestTiming(long startNanos, boolean enabled) {
+        this.startNanos = startNanos;
+        this.enabled = enabled;
+    }
+
+    static RequestTiming start(RoutingContext routingContext, long startNanos) {
+        RequestTiming timing = new RequestTiming(startNanos, true);
+        routingContext.put(KEY, timing);
+        return timing;
+    }
+
+    /**
+     * @return the timing of the request, or one that ignores all calls when timing is disabled
+     */
+    public static RequestTiming of(RoutingContext routingContext) {
+        RequestTiming timing = routingContext.get(KEY);
+        return timing == null ? DISABLED : timing;
+    }
+
+    public void begin(Phase phase) {
+        if (enabled) {
+            openedAt[phase.ordinal()] = System.nanoTime();
+        }
+    }
+
+    public void end(Phase phase) {
+        int index = phase.ordinal();
+        if (enabled && openedAt[index] != 0) {
+            nanos[index] += System.nanoTime() - openedAt[index];
+            openedAt[index] = 0;
+        }
+    }
+
+    /**
+     * Adds the time since {@code fromNanos} to the phase, for work that is too fine grained to begin and end.
+     */
+    public void add(Phase phase, long fromNanos) {
+        if (enabled) {
+            nanos[phase.ordinal()] += System.nanoTime() - fromNanos;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Runs the asynchronous operation inside the phase, which ends when the returned future completes.
+     */
+    public <T> Future<T> time(Phase phase, Supplier<Future<T>> operation) {
+        if (!enabled) {
+            return operation.get();
+        }
+        begin(phase);
+        return operation.get().onComplete(res -> end(phase));
+    }
+
+    /**
+     * @return the phases as a {@code Server-Timing} header value in milliseconds, e.g.
+     * {@code auth;dur=0.120, storage;dur=3.402, total;dur=3.911}
+     */
+    public String serverTiming() {
+        long now = System.nanoTime();
+        StringBuilder out = new StringBuilder(128);
+        for (Phase phase : PHASES) {
+            long phaseNanos = phaseNanos(phase, now);
+            if (phaseNanos > 0) {
+                append(out, phase.metricName, phaseNanos);
+            }
+        }
+        append(out, "total", now - startNanos);
+        return out.toString();
+    }
+
+    private long phaseNanos(Phase phase, long now) {
+        int index = phase.ordinal();
+        return nanos[index] + (openedAt[index] == 0 ? 0 : now - openedAt[index]);
+    }
+
+    private static void append(StringBuilder out, String name, long nanos) {
+        if (out.length() > 0) {
+            out.append(", ");
+        }
+        out.append(name).append(";dur=").append(String.format(Locale.ROOT, "%.3f", nanos / 1e6));
+    }
+}
@@ -0,0 +1,423 @@
+package com.code.block.rest_service.repository;
+
+import com.code.block.rest_service.model.User;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * {@link Storage} decorator that lets identical concurrent title reads share one storage read. A call made while the
+ * same read is in flight waits for it instead of starting another one, and receives its result or failure on its own
+ * context. Reads are shared only between calls asking for the same titles version, which a save raises, so a call
+ * made after a write always reads anew; nothing is kept once the read completes. Safe to share between verticle
+ * instances.
+ * <p>
+ * {@link #streamTitles} is passed through to the first caller as it is read, while up to {@code maxSharedItems}
+ * titles are buffered for the calls that joined it; they get the buffered list once the read ends. A read that grows
+ * past the limit, or whose caller pauses or cancels it, is no longer shared and the calls that joined it read on their
+ * own, so they never wait on a slow client of another call.
+ * {@link #getTitles(String, long)} callers share the returned list and must not modify it.
+ */
+public class CoalescingStorage implements Storage {
+
+  private final Storage storage;
+  private final int maxSharedItems;
+  private final Map<String, Future<List<JsonObject>>> titleReads = new ConcurrentHashMap<>();
+  private final Map<String, SharedRead> streamReads = new ConcurrentHashMap<>();
+
+  private final LongAdder calls = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder unshared = new LongAdder();
+
+  /**
+   * @param maxSharedItems titles of a streamed read buffered for the calls that joined it
+   */
+  public CoalescingStorage(Storage storage, int maxSharedItems) {
+    this.storage = storage;
+    this.maxSharedItems = maxSharedItems;
+  }
+
+  @Override
+  public Future<Void> ensureIndexes() {
+    return storage.ensureIndexes();
+  }
+
+  @Override
+  public Future<Boolean> isLoginPresent(String login) {
+    return storage.isLoginPresent(login);
+  }
+
+  @Override
+  public Future<Optional<User>> getUser(String login) {
+    return storage.getUser(login);
+  }
+
+  @Override
+  public Future<Void> updatePassword(String userId, String password) {
+    return storage.updatePassword(userId, password);
+  }
+
+  @Override
+  public Future<Void> saveUser(JsonObject user) {
+    return storage.saveUser(user);
+  }
+
+  @Override
+  public Future<String> saveTitle(JsonObject title) {
+    return storage.saveTitle(title);
+  }
+
+  @Override
+  public Future<Long> saveTitles(List<JsonObject> titles) {
+    return storage.saveTitles(titles);
+  }
+
+  @Override
+  public Future<Long> getTitlesVersion(String userId) {
+    return storage.getTitlesVersion(userId);
+  }
+
+  @Override
+  public Future<List<JsonObject>> getTitles(String userId, long version) {
+    calls.increment();
+    if (userId == null) {
+      return storage.getTitles(userId, version);
+    }
+    String key = key(userId, version);
+    Future<List<JsonObject>> inFlight = titleReads.get(key);
+    if (inFlight != null) {
+      return join(inFlight);
+    }
+    Promise<List<JsonObject>> promise = Promise.promise();
+    inFlight = titleReads.putIfAbsent(key, promise.future());
+    if (inFlight != null) {
+      return join(inFlight);
+    }
+    Future<List<JsonObject>> result;
+    try {
+      result = storage.getTitles(userId, version);
+    } catch (RuntimeException e) {
+      result = Future.failedFuture(e);
+    }
+    result.onComplete(res -> {
+      titleReads.remove(key, promise.future());
+      promise.handle(res);
+    });
+    return promise.future();
+  }
+
+  @Override
+  public Future<List<JsonObject>> getTitles(String userId, String after, int limit) {
+    return storage.getTitles(userId, after, limit);
+  }
+
+  @Override
+  public Future<Void> saveRevokedToken(String tokenId, long expiresAt) {
+    return storage.saveRevokedToken(tokenId, expiresAt);
+  }
+
+  @Override
+  public Future<Map<String, Long>> getRevokedTokens() {
+    return storage.getRevokedTokens();
+  }
+
+  @Override
+  public ReadStream<JsonObject> streamTitles(String userId, long version) {
+    calls.increment();
+    if (userId == null || maxSharedItems <= 0) {
+      return storage.streamTitles(userId, version);
+    }
+    SharedRead read = new SharedRead(key(userId, version));
+    SharedRead inFlight = streamReads.putIfAbsent(read.key, read);
+    if (inFlight != null) {
+      return new JoiningReadStream(join(inFlight.titles.future()), () -> storage.streamTitles(userId, version));
+    }
+    ReadStream<JsonObject> source;
+    try {
+      source = storage.streamTitles(userId, version);
+    } catch (RuntimeException e) {
+      read.fail(e);
+      throw e;
+    }
+    return new SharingReadStream(read, source);
+  }
+
+  /**
+   * @return calls that could be coalesced, the ones among them that joined a read in flight instead of reading, the
+   * joined streamed reads that were not shared after all, and the reads in flight now
+   */
+  public JsonObject stats() {
+    return new JsonObject()
+      .put("calls", calls.sum())
+      .put("coalesced", coalesced.sum())
+      .put("unshared", unshared.sum())
+      .put("inFlight", titleReads.size() + streamReads.size());
+  }
+
+  private static String key(String userId, long version) {
+    return userId + '@' + version;
+  }
+
+  /**
+   * Waits for a read started by another call, possibly on another event loop, and completes on the caller's context.
+   */
+  private <T> Future<T> join(Future<T> inFlight) {
+    coalesced.increment();
+    Context context = Vertx.currentContext();
+    if (context == null) {
+      return inFlight;
+    }
+    Promise<T> promise = Promise.promise();
+    inFlight.onComplete(res -> {
+      if (Vertx.currentContext() == context) {
+        promise.handle(res);
+      } else {
+        context.runOnContext(v -> promise.handle(res));
+      }
+    });
+    return promise.future();
+  }
+
+  /**
+   * A streamed read in flight. Its titles complete with the buffered list, with {@code null} when the read is not
+   * shared after all, or with the failure of the read.
+   */
+  private class SharedRead {
+    private final String key;
+    private final Promise<List<JsonObject>> titles = Promise.promise();
+
+    private SharedRead(String key) {
+      this.key = key;
+    }
+
+    private void complete(List<JsonObject> read) {
+      streamReads.remove(key, this);
+      titles.tryComplete(Collections.unmodifiableList(read));
+    }
+
+    private void unshare() {
+      streamReads.remove(key, this);
+      titles.tryComplete(null);
+    }
+
+    private void fail(Throwable cause) {
+      streamReads.remove(key, this);
+      titles.tryFail(cause);
+    }
+  }
+
+  /**
+   * The stream of the call that started a shared read: passes the read through while buffering it for the others.
+   */
+  private class SharingReadStream implements ReadStream<JsonObject> {
+    private final SharedRead read;
+    private final ReadStream<JsonObject> source;
+    private List<JsonObject> buffered = new ArrayList<>();
+    private Handler<Void> endHandler;
+    private Handler<Throwable> exceptionHandler;
+
+    private SharingReadStream(SharedRead read, ReadStream<JsonObject> source) {
+      this.read = read;
+      this.source = source;
+      source.exceptionHandler(throwable -> {
+        buffered = null;
+        read.fail(throwable);
+        if (exceptionHandler != null) {
+          exceptionHandler.handle(throwable);
+        }
+      });
+      source.endHandler(v -> {
+        if (buffered != null) {
+          read.complete(buffered);
+          buffered = null;
+        }
+        if (endHandler != null) {
+          endHandler.handle(v);
+        }
+      });
+    }
+
+    @Override
+    public ReadStream<JsonObject> exceptionHandler(Handler<Throwable> handler) {
+      exceptionHandler = handler;
+      return this;
+    }
+
+    @Override
+    public ReadStream<JsonObject> handler(Handler<JsonObject> handler) {
+      if (handler == null) {
+        buffered = null;
+        read.unshare();
+        source.handler(null);
+        return this;
+      }
+      source.handler(item -> {
+        if (buffered != null) {
+          if (buffered.size() < maxSharedItems) {
+            buffered.add(item);
+          } else {
+            buffered = null;
+            read.unshare();
+          }
+        }
+        handler.handle(item);
+      });
+      return this;
+    }
+
+    @Override
+    public ReadStream<JsonObject> pause() {
+      // the caller's client is slower than the read, whose end could now be delayed for as long as it stalls
+      if (buffered != null) {
+        buffered = null;
+        read.unshare();
+      }
+      source.pause();
+      return this;
+    }
+
+    @Override
+    public ReadStream<JsonObject> resume() {
+      source.resume();
+      return this;
+    }
+
+    @Override
+    public ReadStream<JsonObject> fetch(long amount) {
+      source.fetch(amount);
+      return this;
+    }
+
+    @Override
+    public ReadStream<JsonObject> endHandler(Handler<Void> endHandler) {
+      this.endHandler = endHandler;
+      return this;
+    }
+  }
+
+  /**
+   * The stream of a call that joined a shared read: holds the handlers and the demand until the read completes, then
+   * streams its buffered titles, or reads on its own when the read was not shared after all.
+   */
+  private class JoiningReadStream implements ReadStream<JsonObject> {
+    private Handler<JsonObject> handler;
+    private Handler<Void> endHandler;
+    private Handler<Throwable> exceptionHandler;
+    private long demand = Long.MAX_VALUE;
+    private boolean cancelled;
+    private Throwable failure;
+    private ReadStream<JsonObject> delegate;
+
+    private JoiningReadStream(Future<List<JsonObject>> shared, Supplier<ReadStream<JsonObject>> ownRead) {
+      shared.onComplete(res -> {
+        if (cancelled) {
+          return;
+        }
+        if (res.failed()) {
+          fail(res.cause());
+          return;
+        }
+        if (res.result() != null) {
+          start(new ListReadStream<>(res.result()));
+          return;
+        }
+        unshared.increment();
+        try {
+          start(ownRead.get());
+        } catch (RuntimeException e) {
+          fail(e);
+        }
+      });
+    }
+
+    @Override
+    public ReadStream<JsonObject> exceptionHandler(Handler<Throwable> handler) {
+      exceptionHandler = handler;
+      if (delegate != null) {
+        delegate.exceptionHandler(handler);
+      } else if (failure != null && handler != null) {
+        handler.handle(failure);
+      }
+      return this;
+    }
+
+    @Override
+    public ReadStream<JsonObject> handler(Handler<JsonObject> handler) {
+      this.handler = handler;
+      if (delegate != null) {
+        delegate.handler(handler);
+      } else if (handler == null) {
+        cancelled = true;
+      }
+      return this;
+    }
+
+    @Override
+    public ReadStream<JsonObject> pause() {
+      demand = 0;
+      if (delegate != null) {
+        delegate.pause();
+      }
+      return this;
+    }
+
+    @Override
+    public ReadStream<JsonObject> resume() {
+      return fetch(Long.MAX_VALUE);
+    }
+
+    @Override
+    public ReadStream<JsonObject> fetch(long amount) {
+      if (delegate != null) {
+        delegate.fetch(amount);
+      } else {
+        demand = Long.MAX_VALUE - demand < amount ? Long.MAX_VALUE : demand + amount;
+      }
+      return this;
+    }
+
+    @Override
+    public ReadStream<JsonObject> endHandler(Handler<Void> endHandler) {
+      this.endHandler = endHandler;
+      if (delegate != null) {
+        delegate.endHandler(endHandler);
+      }
+      return this;
+    }
+
+    private void start(ReadStream<JsonObject> titles) {
+      delegate = titles;
+      titles.exceptionHandler(exceptionHandler);
+      titles.endHandler(endHandler);
+      if (demand != Long.MAX_VALUE) {
+        titles.pause();
+        if (demand > 0) {
+          titles.fetch(demand);
+        }
+      }
+      if (handler != null) {
+        titles.handler(handler);
+      }
+    }
+
+    private void fail(Throwable cause) {
+      failure = cause;
+      if (exceptionHandler != null) {
+        exceptionHandler.handle(cause);
+      }
+    }
+  }
+}
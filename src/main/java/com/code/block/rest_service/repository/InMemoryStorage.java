@@ -0,0 +1,181 @@
+package com.code.block.rest_service.repository;
+
+import com.code.block.rest_service.model.User;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link Storage} kept entirely in memory, for load tests, edge nodes and integration tests without MongoDB.
+ * Users live in concurrent maps; every user owns a separate title list guarded by its own lock, so writers of
+ * different users never contend. Titles get {@link ObjectId} ids assigned under that lock, which keeps every
+ * list sorted by {@code _id} and lets pages be found with a binary search. Stored titles are never modified, so
+ * reads hand out shallow copies of the lists. As titles are never removed, their count serves as the titles
+ * version, offset by the creation time of the storage so versions handed out before a restart do not match.
+ * All futures are already completed.
+ */
+public class InMemoryStorage implements Storage {
+
+  private final Map<String, JsonObject> usersByLogin = new ConcurrentHashMap<>();
+  private final Map<String, String> loginsById = new ConcurrentHashMap<>();
+  private final Map<String, UserTitles> titles = new ConcurrentHashMap<>();
+  private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+  private final long createdAt = System.currentTimeMillis();
+
+  @Override
+  public Future<Void> ensureIndexes() {
+    return Future.succeededFuture();
+  }
+
+  @Override
+  public Future<Boolean> isLoginPresent(String login) {
+    return Future.succeededFuture(usersByLogin.containsKey(login));
+  }
+
+  @Override
+  public Future<Optional<User>> getUser(String login) {
+    JsonObject user = usersByLogin.get(login);
+    if (user == null) {
+      return Future.succeededFuture(Optional.empty());
+    }
+    synchronized (user) {
+      return Future.succeededFuture(Optional.of(User.builder()
+        .id(user.getString("_id"))
+        .login(user.getString("login"))
+        .password(user.getString("password"))
+        .build()));
+    }
+  }
+
+  @Override
+  public Future<Void> updatePassword(String userId, String password) {
+    String login = loginsById.get(userId);
+    JsonObject user = login == null ? null : usersByLogin.get(login);
+    if (user != null) {
+      synchronized (user) {
+        user.put("password", password);
+      }
+    }
+    return Future.succeededFuture();
+  }
+
+  @Override
+  public Future<Void> saveUser(JsonObject user) {
+    String id = new ObjectId().toHexString();
+    JsonObject stored = user.copy().put("_id", id);
+    if (usersByLogin.putIfAbsent(stored.getString("login"), stored) != null) {
+      return Future.failedFuture(new LoginAlreadyPresentException());
+    }
+    loginsById.put(id, stored.getString("login"));
+    return Future.succeededFuture();
+  }
+
+  @Override
+  public Future<String> saveTitle(JsonObject title) {
+    return Future.succeededFuture(titlesOf(title.getString("userId")).add(title.getString("title")));
+  }
+
+  @Override
+  public Future<Long> saveTitles(List<JsonObject> titles) {
+    for (JsonObject title : titles) {
+      titlesOf(title.getString("userId")).add(title.getString("title"));
+    }
+    return Future.succeededFuture((long) titles.size());
+  }
+
+  @Override
+  public Future<Long> getTitlesVersion(String userId) {
+    UserTitles userTitles = titles.get(userId);
+    return Future.succeededFuture(createdAt + (userTitles == null ? 0 : userTitles.size()));
+  }
+
+  /**
+   * Drops the revocations of expired tokens first, the way the TTL index of {@link MongoDao} does.
+   */
+  @Override
+  public Future<Void> saveRevokedToken(String tokenId, long expiresAt) {
+    long now = System.currentTimeMillis();
+    revokedTokens.values().removeIf(expiry -> expiry <= now);
+    revokedTokens.put(tokenId, expiresAt);
+    return Future.succeededFuture();
+  }
+
+  @Override
+  public Future<Map<String, Long>> getRevokedTokens() {
+    long now = System.currentTimeMillis();
+    Map<String, Long> unexpired = new HashMap<>();
+    revokedTokens.forEach((tokenId, expiresAt) -> {
+      if (expiresAt > now) {
+        unexpired.put(tokenId, expiresAt);
+      }
+    });
+    return Future.succeededFuture(unexpired);
+  }
+
+  @Override
+  public Future<List<JsonObject>> getTitles(String userId, long version) {
+    UserTitles userTitles = titles.get(userId);
+    return Future.succeededFuture(userTitles == null ? Collections.emptyList() : userTitles.snapshot());
+  }
+
+  @Override
+  public Future<List<JsonObject>> getTitles(String userId, String after, int limit) {
+    UserTitles userTitles = titles.get(userId);
+    return Future.succeededFuture(userTitles == null ? Collections.emptyList() : userTitles.page(after, limit));
+  }
+
+  @Override
+  public ReadStream<JsonObject> streamTitles(String userId, long version) {
+    UserTitles userTitles = titles.get(userId);
+    return new ListReadStream<>(userTitles == null ? Collections.emptyList() : userTitles.snapshot());
+  }
+
+  private UserTitles titlesOf(String userId) {
+    return titles.computeIfAbsent(userId, id -> new UserTitles());
+  }
+
+  private static class UserTitles {
+    private final List<JsonObject> items = new ArrayList<>();
+
+    private synchronized String add(String title) {
+      String id = new ObjectId().toHexString();
+      items.add(new JsonObject().put("_id", id).put("title", title));
+      return id;
+    }
+
+    private synchronized int size() {
+      return items.size();
+    }
+
+    private synchronized List<JsonObject> snapshot() {
+      return new ArrayList<>(items);
+    }
+
+    private synchronized List<JsonObject> page(String after, int limit) {
+      int from = 0;
+      if (after != null) {
+        int low = 0;
+        int high = items.size();
+        while (low < high) {
+          int middle = (low + high) >>> 1;
+          if (items.get(middle).getString("_id").compareTo(after) <= 0) {
+            low = middle + 1;
+          } else {
+            high = middle;
+          }
+        }
+        from = low;
+      }
+      return new ArrayList<>(items.subList(from, Math.min(items.size(), from + limit)));
+    }
+  }
+}
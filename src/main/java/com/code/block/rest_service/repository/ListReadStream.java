@@ -0,0 +1,81 @@
+package com.code.block.rest_service.repository;
+
+import io.vertx.core.Handler;
+import io.vertx.core.streams.ReadStream;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * {@link ReadStream} over an in-memory list, honouring pause/resume, so already loaded items can be served
+ * through the same streaming path as a database cursor. Items are emitted on the calling thread.
+ */
+public class ListReadStream<T> implements ReadStream<T> {
+
+  private final Iterator<T> iterator;
+  private Handler<T> handler;
+  private Handler<Void> endHandler;
+  private long demand = Long.MAX_VALUE;
+  private boolean emitting;
+  private boolean ended;
+
+  public ListReadStream(List<T> items) {
+    this.iterator = items.iterator();
+  }
+
+  @Override
+  public ReadStream<T> exceptionHandler(Handler<Throwable> handler) {
+    return this;
+  }
+
+  @Override
+  public ReadStream<T> handler(Handler<T> handler) {
+    this.handler = handler;
+    emit();
+    return this;
+  }
+
+  @Override
+  public ReadStream<T> pause() {
+    demand = 0;
+    return this;
+  }
+
+  @Override
+  public ReadStream<T> resume() {
+    return fetch(Long.MAX_VALUE);
+  }
+
+  @Override
+  public ReadStream<T> fetch(long amount) {
+    demand = Long.MAX_VALUE - demand < amount ? Long.MAX_VALUE : demand + amount;
+    emit();
+    return this;
+  }
+
+  @Override
+  public ReadStream<T> endHandler(Handler<Void> endHandler) {
+    this.endHandler = endHandler;
+    return this;
+  }
+
+  private void emit() {
+    if (emitting || handler == null) {
+      return;
+    }
+    emitting = true;
+    while (demand > 0 && iterator.hasNext()) {
+      if (demand != Long.MAX_VALUE) {
+        demand--;
+      }
+      handler.handle(iterator.next());
+    }
+    if (!iterator.hasNext() && !ended) {
+      ended = true;
+      if (endHandler != null) {
+        endHandler.handle(null);
+      }
+    }
+    emitting = false;
+  }
+}
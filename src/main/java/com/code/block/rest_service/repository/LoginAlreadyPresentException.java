@@ -0,0 +1,10 @@
+package com.code.block.rest_service.repository;
+
+/**
+ * Raised when a user is saved with a login that the unique {@code users.login} index already holds.
+ */
+public class LoginAlreadyPresentException extends RuntimeException {
+  public LoginAlreadyPresentException() {
+    super("User login already present");
+  }
+}
@@ -0,0 +1,200 @@
+package com.code.block.rest_service.repository;
+
+import com.code.block.rest_service.metrics.Metrics;
+import com.code.block.rest_service.metrics.OperationTimer;
+import com.code.block.rest_service.model.User;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * {@link Storage} decorator that records the duration and failures of every call per operation. Streams are timed
+ * until their end, failure or cancellation.
+ */
+public class MeteredStorage implements Storage {
+
+  private final Storage storage;
+  private final OperationTimer ensureIndexes;
+  private final OperationTimer isLoginPresent;
+  private final OperationTimer getUser;
+  private final OperationTimer updatePassword;
+  private final OperationTimer saveUser;
+  private final OperationTimer saveTitle;
+  private final OperationTimer saveTitles;
+  private final OperationTimer getTitlesVersion;
+  private final OperationTimer saveRevokedToken;
+  private final OperationTimer getRevokedTokens;
+  private final OperationTimer getTitles;
+  private final OperationTimer getTitlesPage;
+  private final OperationTimer streamTitles;
+
+  public MeteredStorage(Storage storage, Metrics metrics) {
+    this.storage = storage;
+    this.ensureIndexes = metrics.storage("ensureIndexes");
+    this.isLoginPresent = metrics.storage("isLoginPresent");
+    this.getUser = metrics.storage("getUser");
+    this.updatePassword = metrics.storage("updatePassword");
+    this.saveUser = metrics.storage("saveUser");
+    this.saveTitle = metrics.storage("saveTitle");
+    this.saveTitles = metrics.storage("saveTitles");
+    this.getTitlesVersion = metrics.storage("getTitlesVersion");
+    this.saveRevokedToken = metrics.storage("saveRevokedToken");
+    this.getRevokedTokens = metrics.storage("getRevokedTokens");
+    this.getTitles = metrics.storage("getTitles");
+    this.getTitlesPage = metrics.storage("getTitlesPage");
+    this.streamTitles = metrics.storage("streamTitles");
+  }
+
+  @Override
+  public Future<Void> ensureIndexes() {
+    long start = System.nanoTime();
+    return storage.ensureIndexes().onComplete(ensureIndexes.since(start));
+  }
+
+  @Override
+  public Future<Boolean> isLoginPresent(String login) {
+    long start = System.nanoTime();
+    return storage.isLoginPresent(login).onComplete(isLoginPresent.since(start));
+  }
+
+  @Override
+  public Future<Optional<User>> getUser(String login) {
+    long start = System.nanoTime();
+    return storage.getUser(login).onComplete(getUser.since(start));
+  }
+
+  @Override
+  public Future<Void> updatePassword(String userId, String password) {
+    long start = System.nanoTime();
+    return storage.updatePassword(userId, password).onComplete(updatePassword.since(start));
+  }
+
+  @Override
+  public Future<Void> saveUser(JsonObject user) {
+    long start = System.nanoTime();
+    return storage.saveUser(user).onComplete(saveUser.since(start));
+  }
+
+  @Override
+  public Future<String> saveTitle(JsonObject title) {
+    long start = System.nanoTime();
+    return storage.saveTitle(title).onComplete(saveTitle.since(start));
+  }
+
+  @Override
+  public Future<Long> saveTitles(List<JsonObject> titles) {
+    long start = System.nanoTime();
+    return storage.saveTitles(titles).onComplete(saveTitles.since(start));
+  }
+
+  @Override
+  public Future<Long> getTitlesVersion(String userId) {
+    long start = System.nanoTime();
+    return storage.getTitlesVersion(userId).onComplete(getTitlesVersion.since(start));
+  }
+
+  @Override
+  public Future<Void> saveRevokedToken(String tokenId, long expiresAt) {
+    long start = System.nanoTime();
+    return storage.saveRevokedToken(tokenId, expiresAt).onComplete(saveRevokedToken.since(start));
+  }
+
+  @Override
+  public Future<Map<String, Long>> getRevokedTokens() {
+    long start = System.nanoTime();
+    return storage.getRevokedTokens().onComplete(getRevokedTokens.since(start));
+  }
+
+  @Override
+  public Future<List<JsonObject>> getTitles(String userId, long version) {
+    long start = System.nanoTime();
+    return storage.getTitles(userId, version).onComplete(getTitles.since(start));
+  }
+
+  @Override
+  public Future<List<JsonObject>> getTitles(String userId, String after, int limit) {
+    long start = System.nanoTime();
+    return storage.getTitles(userId, after, limit).onComplete(getTitlesPage.since(start));
+  }
+
+  @Override
+  public ReadStream<JsonObject> streamTitles(String userId, long version) {
+    long start = System.nanoTime();
+    return new TimedReadStream(storage.streamTitles(userId, version), start);
+  }
+
+  private class TimedReadStream implements ReadStream<JsonObject> {
+    private final ReadStream<JsonObject> delegate;
+    private final long start;
+    private boolean recorded;
+
+    private TimedReadStream(ReadStream<JsonObject> delegate, long start) {
+      this.delegate = delegate;
+      this.start = start;
+    }
+
+    @Override
+    public ReadStream<JsonObject> exceptionHandler(Handler<Throwable> handler) {
+      delegate.exceptionHandler(throwable -> {
+        recordOnce(false);
+        if (handler != null) {
+          handler.handle(throwable);
+        }
+      });
+      return this;
+    }
+
+    @Override
+    public ReadStream<JsonObject> handler(Handler<JsonObject> handler) {
+      delegate.handler(handler);
+      if (handler == null) {
+        recordOnce(true);
+      }
+      return this;
+    }
+
+    @Override
+    public ReadStream<JsonObject> pause() {
+      delegate.pause();
+      return this;
+    }
+
+    @Override
+    public ReadStream<JsonObject> resume() {
+      delegate.resume();
+      return this;
+    }
+
+    @Override
+    public ReadStream<JsonObject> fetch(long amount) {
+      delegate.fetch(amount);
+      return this;
+    }
+
+    @Override
+    public ReadStream<JsonObject> endHandler(Handler<Void> endHandler) {
+      delegate.endHandler(v -> {
+        recordOnce(true);
+        if (endHandler != null) {
+          endHandler.handle(v);
+        }
+      });
+      return this;
+    }
+
+    /**
+     * A cancelled stream may still end or fail afterwards, which must not count as a second call.
+     */
+    private void recordOnce(boolean succeeded) {
+      if (!recorded) {
+        recorded = true;
+        streamTitles.record(start, succeeded);
+      }
+    }
+  }
+}
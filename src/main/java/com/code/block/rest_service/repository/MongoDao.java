@@ -1,25 +1,80 @@
 package com.code.block.rest_service.repository;
 
 import com.code.block.rest_service.model.User;
+import com.mongodb.ErrorCategory;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoWriteException;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.mongo.BulkOperation;
+import io.vertx.ext.mongo.BulkWriteOptions;
 import io.vertx.ext.mongo.FindOptions;
+import io.vertx.ext.mongo.IndexOptions;
 import io.vertx.ext.mongo.MongoClient;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
 
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Slf4j
-public class MongoDao {
+public class MongoDao implements Storage {
+
+  private static final int STREAM_BATCH_SIZE = 500;
+  private static final String TITLES_VERSION = "titlesVersion";
+  private static final int VERSION_ATTEMPTS = 3;
+  private static final String EXPIRES_AT = "expiresAt";
 
   private final MongoClient mongoClient;
+  private final TitleWriteBatcher titleWriteBatcher;
+  private final TitleCache titleCache;
 
   public MongoDao(MongoClient mongoClient) {
+    this(mongoClient, null, null);
+  }
+
+  /**
+   * @param titleWriteBatcher coalesces {@link #saveTitle} inserts into bulk writes, {@code null} to insert one by one
+   * @param titleCache serves repeated title reads of a user, {@code null} to always query
+   */
+  public MongoDao(MongoClient mongoClient, TitleWriteBatcher titleWriteBatcher, TitleCache titleCache) {
     this.mongoClient = mongoClient;
+    this.titleWriteBatcher = titleWriteBatcher;
+    this.titleCache = titleCache;
   }
 
+  /**
+   * Creates the indexes the queries rely on: a unique index on {@code users.login} and a compound
+   * {@code titles.userId, _id} index that serves both the per-user lookup and {@code _id} paging. A TTL index on
+   * {@code revokedTokens.expiresAt} lets MongoDB delete revocations once their tokens expired.
+   * Creating an index that already exists is a no-op.
+   */
+  @Override
+  public Future<Void> ensureIndexes() {
+    Future<Void> users = mongoClient.createIndexWithOptions("users",
+      new JsonObject().put("login", 1), new IndexOptions().name("login_unique").unique(true));
+    Future<Void> titles = mongoClient.createIndexWithOptions("titles",
+      new JsonObject().put("userId", 1).put("_id", 1), new IndexOptions().name("userId_id"));
+    Future<Void> revokedTokens = mongoClient.createIndexWithOptions("revokedTokens",
+      new JsonObject().put(EXPIRES_AT, 1), new IndexOptions().name("expiresAt_ttl").expireAfter(0L, TimeUnit.SECONDS));
+    return CompositeFuture.all(users, titles, revokedTokens)
+      .onSuccess(res -> log.info("MongoDB indexes are in place"))
+      .<Void>mapEmpty();
+  }
+
+  @Override
   public Future<Boolean> isLoginPresent(String login) {
     Promise<Boolean> promise = Promise.promise();
     JsonObject query = new JsonObject().put("login", login);
@@ -33,19 +88,14 @@ public class MongoDao {
     return promise.future();
   }
 
-  public Future<Optional<User>> getUser(String login, String password) {
+  @Override
+  public Future<Optional<User>> getUser(String login) {
     Promise<Optional<User>> promise = Promise.promise();
-    JsonObject query = new JsonObject().put("login", login).put("password", password);
+    JsonObject query = new JsonObject().put("login", login);
     mongoClient.findOne("users", query, new JsonObject(), res -> {
       if (res.succeeded()) {
         if (res.result() != null) {
-          promise.complete(Optional.ofNullable(
-            User.builder()
-            .id(res.result().getString("_id"))
-            .login("login")
-            .password(res.result().getString("password"))
-            .build()
-          ));
+          promise.complete(Optional.of(toUser(res.result())));
         } else {
           promise.complete(Optional.empty());
         }
@@ -56,11 +106,33 @@ public class MongoDao {
     return promise.future();
   }
 
+  @Override
+  public Future<Void> updatePassword(String userId, String password) {
+    Promise<Void> promise = Promise.promise();
+    JsonObject query = new JsonObject().put("_id", userId);
+    JsonObject update = new JsonObject().put("$set", new JsonObject().put("password", password));
+    mongoClient.updateCollection("users", query, update, res -> {
+      if (res.succeeded()) {
+        promise.complete();
+      } else {
+        promise.fail(res.cause());
+      }
+    });
+    return promise.future();
+  }
+
+  /**
+   * Inserts the user in a single round trip. A login that is already taken fails the future with
+   * {@link LoginAlreadyPresentException}, relying on the unique index created by {@link #ensureIndexes()}.
+   */
+  @Override
   public Future<Void> saveUser(JsonObject user) {
     Promise<Void> promise = Promise.promise();
-    mongoClient.save("users", user, res -> {
+    mongoClient.insert("users", user, res -> {
       if (res.succeeded()) {
         promise.complete();
+      } else if (isDuplicateKey(res.cause())) {
+        promise.fail(new LoginAlreadyPresentException());
       } else {
         promise.fail(res.cause());
       }
@@ -68,11 +140,92 @@ public class MongoDao {
     return promise.future();
   }
 
+  /**
+   * Inserts the title, then raises the titles version of its user; with a batcher both happen once per batch.
+   * The save fails when the version could not be raised, and the cached titles of the user are dropped then.
+   */
+  @Override
   public Future<String> saveTitle(JsonObject title) {
-    Promise<String> promise = Promise.promise();
-    mongoClient.insert("titles", title, res -> {
+    String userId = title.getString("userId");
+    Future<String> saved;
+    if (titleWriteBatcher != null) {
+      saved = titleWriteBatcher.insert(title);
+    } else {
+      Promise<String> promise = Promise.promise();
+      mongoClient.insert("titles", title, res -> {
+        if (res.succeeded()) {
+          promise.complete(res.result());
+        } else {
+          promise.fail(res.cause());
+        }
+      });
+      saved = promise.future()
+        .compose(id -> raiseTitlesVersions(mongoClient, Collections.singletonMap(userId, 1L)).map(id));
+    }
+    if (titleCache != null) {
+      saved = saved.onComplete(res -> {
+        if (res.succeeded()) {
+          titleCache.saved(userId, new JsonObject().put("_id", res.result()).put("title", title.getString("title")));
+        } else {
+          titleCache.invalidate(userId);
+        }
+      });
+    }
+    return saved;
+  }
+
+  /**
+   * Inserts the titles with a single unordered bulk write. Documents without {@code _id} get a generated one,
+   * so ids stay comparable with single inserts. The future holds the number of inserted documents, also when
+   * only part of the batch was written. The titles versions of the users are then raised by the number of titles
+   * written for each of them, see {@link #raiseTitlesVersions}.
+   */
+  @Override
+  public Future<Long> saveTitles(List<JsonObject> titles) {
+    Promise<Long> promise = Promise.promise();
+    List<BulkOperation> operations = titles.stream()
+      .map(title -> BulkOperation.createInsert(withId(title)))
+      .collect(Collectors.toList());
+    mongoClient.bulkWriteWithOptions("titles", operations, new BulkWriteOptions().setOrdered(false), res -> {
+      if (titleCache != null) {
+        titles.stream().map(title -> title.getString("userId")).distinct().forEach(titleCache::invalidate);
+      }
+      Set<Integer> rejected = Collections.emptySet();
+      long inserted;
       if (res.succeeded()) {
-        promise.complete(res.result());
+        inserted = res.result().getInsertedCount();
+      } else if (res.cause() instanceof MongoBulkWriteException) {
+        MongoBulkWriteException cause = (MongoBulkWriteException) res.cause();
+        log.warn("Bulk insert partially failed: {} of {} documents rejected", cause.getWriteErrors().size(), titles.size());
+        rejected = cause.getWriteErrors().stream().map(BulkWriteError::getIndex).collect(Collectors.toSet());
+        inserted = cause.getWriteResult().getInsertedCount();
+      } else {
+        promise.fail(res.cause());
+        return;
+      }
+      Map<String, Long> savedPerUser = new HashMap<>();
+      for (int i = 0; i < titles.size(); i++) {
+        String userId = titles.get(i).getString("userId");
+        if (!rejected.contains(i) && userId != null) {
+          savedPerUser.merge(userId, 1L, Long::sum);
+        }
+      }
+      raiseTitlesVersions(mongoClient, savedPerUser).map(inserted).onComplete(promise);
+    });
+    return promise.future();
+  }
+
+  /**
+   * Reads the version kept in the user document, which {@link #saveTitle} and {@link #saveTitles} raise, so the
+   * titles collection is not touched. Users that never saved a title have version {@code 0}.
+   */
+  @Override
+  public Future<Long> getTitlesVersion(String userId) {
+    Promise<Long> promise = Promise.promise();
+    JsonObject query = new JsonObject().put("_id", userId);
+    mongoClient.findOne("users", query, new JsonObject().put(TITLES_VERSION, 1), res -> {
+      if (res.succeeded()) {
+        promise.complete(res.result() == null ? 0L : res.result().getLong(TITLES_VERSION, 0L));
       } else {
         promise.fail(res.cause());
       }
@@ -80,10 +233,86 @@ public class MongoDao {
     return promise.future();
   }
 
-  public Future<List<JsonObject>> getTitles(String userId) {
+  /**
+   * Stores the id as {@code _id} of {@code revokedTokens}, so revoking a token twice hits the primary key and
+   * succeeds without a second document. The expiry is stored as a date for the TTL index, and left out for tokens
+   * that never expire.
+   */
+  @Override
+  public Future<Void> saveRevokedToken(String tokenId, long expiresAt) {
+    Promise<Void> promise = Promise.promise();
+    JsonObject document = new JsonObject().put("_id", tokenId);
+    if (expiresAt != Long.MAX_VALUE) {
+      document.put(EXPIRES_AT, mongoDate(expiresAt));
+    }
+    mongoClient.insert("revokedTokens", document, res -> {
+      if (res.succeeded() || isDuplicateKey(res.cause())) {
+        promise.complete();
+      } else {
+        promise.fail(res.cause());
+      }
+    });
+    return promise.future();
+  }
+
+  /**
+   * Filters out expired tokens, as the TTL monitor deletes them only about once a minute.
+   */
+  @Override
+  public Future<Map<String, Long>> getRevokedTokens() {
+    Promise<Map<String, Long>> promise = Promise.promise();
+    JsonObject query = new JsonObject().put("$or", new JsonArray()
+      .add(new JsonObject().put(EXPIRES_AT, new JsonObject().put("$gt", mongoDate(System.currentTimeMillis()))))
+      .add(new JsonObject().put(EXPIRES_AT, new JsonObject().put("$exists", false))));
+    mongoClient.find("revokedTokens", query, res -> {
+      if (res.succeeded()) {
+        promise.complete(res.result().stream().collect(Collectors.toMap(token -> token.getString("_id"),
+          token -> token.containsKey(EXPIRES_AT)
+            ? Instant.parse(token.getJsonObject(EXPIRES_AT).getString("$date")).toEpochMilli()
+            : Long.MAX_VALUE)));
+      } else {
+        promise.fail(res.cause());
+      }
+    });
+    return promise.future();
+  }
+
+  @Override
+  public Future<List<JsonObject>> getTitles(String userId, long version) {
+    if (titleCache != null) {
+      List<JsonObject> cached = titleCache.get(userId, version);
+      if (cached != null) {
+        return Future.succeededFuture(cached);
+      }
+    }
+    Object fill = titleCache == null ? null : titleCache.beginFill(userId);
     Promise<List<JsonObject>> promise = Promise.promise();
     JsonObject query = new JsonObject().put("userId", userId);
     FindOptions findOptions = new FindOptions().setFields(new JsonObject().put("userId", 0));
+    mongoClient.findWithOptions("titles", query, findOptions, res -> {
+      if (res.succeeded()) {
+        if (fill != null) {
+          titleCache.put(userId, version, res.result(), fill);
+        }
+        promise.complete(res.result());
+      } else {
+        promise.fail(res.cause());
+      }
+    });
+    return promise.future();
+  }
+
+  @Override
+  public Future<List<JsonObject>> getTitles(String userId, String after, int limit) {
+    Promise<List<JsonObject>> promise = Promise.promise();
+    JsonObject query = new JsonObject().put("userId", userId);
+    if (after != null) {
+      query.put("_id", new JsonObject().put("$gt", after));
+    }
+    FindOptions findOptions = new FindOptions()
+      .setFields(new JsonObject().put("userId", 0))
+      .setSort(new JsonObject().put("_id", 1))
+      .setLimit(limit);
     mongoClient.findWithOptions("titles", query, findOptions, res -> {
       if (res.succeeded()) {
         promise.complete(res.result());
@@ -93,4 +322,81 @@ public class MongoDao {
     });
     return promise.future();
   }
+
+  /**
+   * Streams the titles in batches of {@value STREAM_BATCH_SIZE}; cached titles are streamed without a query.
+   */
+  @Override
+  public ReadStream<JsonObject> streamTitles(String userId, long version) {
+    if (titleCache != null) {
+      List<JsonObject> cached = titleCache.get(userId, version);
+      if (cached != null) {
+        return new ListReadStream<>(cached);
+      }
+    }
+    JsonObject query = new JsonObject().put("userId", userId);
+    FindOptions findOptions = new FindOptions()
+      .setFields(new JsonObject().put("userId", 0))
+      .setBatchSize(STREAM_BATCH_SIZE);
+    ReadStream<JsonObject> titles = mongoClient.findBatchWithOptions("titles", query, findOptions);
+    return titleCache == null ? titles : titleCache.fill(userId, version, titles);
+  }
+
+  /**
+   * Raises the titles version of each user by the number of titles just written for them, with one unordered bulk
+   * write of {@code users}. A failed write is retried up to {@value VERSION_ATTEMPTS} attempts in total and then
+   * fails the future: a version that was not raised would keep confirming copies that miss the written titles.
+   * A write that failed after it was applied raises a version more than once, which only makes copies be read again.
+   */
+  static Future<Void> raiseTitlesVersions(MongoClient mongoClient, Map<String, Long> savedPerUser) {
+    if (savedPerUser.isEmpty()) {
+      return Future.succeededFuture();
+    }
+    List<BulkOperation> operations = savedPerUser.entrySet().stream()
+      .map(saved -> BulkOperation.createUpdate(new JsonObject().put("_id", saved.getKey()),
+        new JsonObject().put("$inc", new JsonObject().put(TITLES_VERSION, saved.getValue()))))
+      .collect(Collectors.toList());
+    Promise<Void> promise = Promise.promise();
+    raiseTitlesVersions(mongoClient, operations, 1, promise);
+    return promise.future();
+  }
+
+  private static void raiseTitlesVersions(MongoClient mongoClient, List<BulkOperation> operations, int attempt,
+                                          Promise<Void> promise) {
+    mongoClient.bulkWriteWithOptions("users", operations, new BulkWriteOptions().setOrdered(false), res -> {
+      if (res.succeeded()) {
+        promise.complete();
+      } else if (attempt < VERSION_ATTEMPTS) {
+        log.warn("Titles versions failed to update, attempt {} of {}: {}", attempt, VERSION_ATTEMPTS, res.cause().getMessage());
+        raiseTitlesVersions(mongoClient, operations, attempt + 1, promise);
+      } else {
+        log.error("Titles versions failed to update after {} attempts", VERSION_ATTEMPTS, res.cause());
+        promise.fail(res.cause());
+      }
+    });
+  }
+
+  static User toUser(JsonObject document) {
+    return User.builder()
+      .id(document.getString("_id"))
+      .login(document.getString("login"))
+      .password(document.getString("password"))
+      .build();
+  }
+
+  private static JsonObject mongoDate(long epochMillis) {
+    return new JsonObject().put("$date", Instant.ofEpochMilli(epochMillis).toString());
+  }
+
+  static JsonObject withId(JsonObject document) {
+    if (!document.containsKey("_id")) {
+      document.put("_id", new ObjectId().toHexString());
+    }
+    return document;
+  }
+
+  private static boolean isDuplicateKey(Throwable cause) {
+    return cause instanceof MongoWriteException
+      && ((MongoWriteException) cause).getError().getCategory() == ErrorCategory.DUPLICATE_KEY;
+  }
 }
@@ -0,0 +1,92 @@
+package com.code.block.rest_service.repository;
+
+import com.code.block.rest_service.model.User;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * {@link Storage} decorator that runs every call on a collection through that collection's {@link StorageGuard},
+ * so a slow or failing database fails requests quickly instead of piling them up.
+ */
+public class ResilientStorage implements Storage {
+
+  private final Storage storage;
+  private final StorageGuard users;
+  private final StorageGuard titles;
+
+  public ResilientStorage(Storage storage, StorageGuard users, StorageGuard titles) {
+    this.storage = storage;
+    this.users = users;
+    this.titles = titles;
+  }
+
+  @Override
+  public Future<Void> ensureIndexes() {
+    return storage.ensureIndexes();
+  }
+
+  @Override
+  public Future<Boolean> isLoginPresent(String login) {
+    return users.call(() -> storage.isLoginPresent(login));
+  }
+
+  @Override
+  public Future<Optional<User>> getUser(String login) {
+    return users.call(() -> storage.getUser(login));
+  }
+
+  @Override
+  public Future<Void> updatePassword(String userId, String password) {
+    return users.call(() -> storage.updatePassword(userId, password));
+  }
+
+  @Override
+  public Future<Void> saveUser(JsonObject user) {
+    return users.call(() -> storage.saveUser(user));
+  }
+
+  @Override
+  public Future<String> saveTitle(JsonObject title) {
+    return titles.call(() -> storage.saveTitle(title));
+  }
+
+  @Override
+  public Future<Long> saveTitles(List<JsonObject> titles) {
+    return this.titles.call(() -> storage.saveTitles(titles));
+  }
+
+  @Override
+  public Future<Long> getTitlesVersion(String userId) {
+    return users.call(() -> storage.getTitlesVersion(userId));
+  }
+
+  @Override
+  public Future<Void> saveRevokedToken(String tokenId, long expiresAt) {
+    return users.call(() -> storage.saveRevokedToken(tokenId, expiresAt));
+  }
+
+  @Override
+  public Future<Map<String, Long>> getRevokedTokens() {
+    return users.call(storage::getRevokedTokens);
+  }
+
+  @Override
+  public Future<List<JsonObject>> getTitles(String userId, long version) {
+    return titles.call(() -> storage.getTitles(userId, version));
+  }
+
+  @Override
+  public Future<List<JsonObject>> getTitles(String userId, String after, int limit) {
+    return titles.call(() -> storage.getTitles(userId, after, limit));
+  }
+
+  @Override
+  public ReadStream<JsonObject> streamTitles(String userId, long version) {
+    return titles.stream(() -> storage.streamTitles(userId, version));
+  }
+}
@@ -0,0 +1,85 @@
+package com.code.block.rest_service.repository;
+
+import com.code.block.rest_service.model.User;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Users and their titles as seen by the HTTP layer. Titles are returned without their {@code userId} and
+ * carry a string {@code _id} that grows with insertion order, which {@link #getTitles(String, String, int)}
+ * pages by.
+ */
+public interface Storage {
+
+  /**
+   * Prepares the backend before the first request, e.g. by creating indexes.
+   */
+  Future<Void> ensureIndexes();
+
+  Future<Boolean> isLoginPresent(String login);
+
+  /**
+   * Looks the user up by login only; the stored password hash is verified by the caller.
+   */
+  Future<Optional<User>> getUser(String login);
+
+  Future<Void> updatePassword(String userId, String password);
+
+  /**
+   * Saves a new user. A login that is already taken fails the future with {@link LoginAlreadyPresentException}.
+   */
+  Future<Void> saveUser(JsonObject user);
+
+  /**
+   * @return the generated id of the saved title
+   */
+  Future<String> saveTitle(JsonObject title);
+
+  /**
+   * Saves many titles at once. The future holds the number of saved titles, also when only part of them was saved.
+   */
+  Future<Long> saveTitles(List<JsonObject> titles);
+
+  /**
+   * Returns a number that changes whenever titles of the user are saved, so a copy of the titles can be
+   * revalidated without reading them. It changes only once the saved titles are visible to the getters. Every
+   * {@link #saveTitle} normally raises it by exactly one, so a copy the saved title was added to stays current;
+   * a retried update may raise it further, which only makes such copies be read again.
+   */
+  Future<Long> getTitlesVersion(String userId);
+
+  /**
+   * Returns all titles of the user, at least as new as {@code version}, the titles version the caller read before.
+   * A copy kept from an older version, e.g. before a save through another node, is not served.
+   */
+  Future<List<JsonObject>> getTitles(String userId, long version);
+
+  /**
+   * Returns up to {@code limit} titles of the user ordered by {@code _id}, starting right after the
+   * {@code after} id (or from the beginning when it is {@code null}).
+   */
+  Future<List<JsonObject>> getTitles(String userId, String after, int limit);
+
+  /**
+   * Persists the id of a revoked token until the token expires at {@code expiresAt}, in epoch milliseconds, or for
+   * good when it is {@link Long#MAX_VALUE}. Revoking the same id again succeeds.
+   */
+  Future<Void> saveRevokedToken(String tokenId, long expiresAt);
+
+  /**
+   * @return the ids of the revoked tokens that have not expired, with the time they expire at, to restore the
+   * revocations after a restart
+   */
+  Future<Map<String, Long>> getRevokedTokens();
+
+  /**
+   * Streams all titles of the user, so the caller never holds the whole list in memory. As with
+   * {@link #getTitles(String, long)}, the titles are at least as new as {@code version}.
+   */
+  ReadStream<JsonObject> streamTitles(String userId, long version);
+}
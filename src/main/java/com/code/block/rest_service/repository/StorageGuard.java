@@ -0,0 +1,328 @@
+package com.code.block.rest_service.repository;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Protects the callers of one collection from a slow or failing database.
+ * <ul>
+ *   <li>At most {@code maxInFlight} calls run at once; more fail right away.</li>
+ *   <li>A call that takes longer than its deadline fails with a {@link TimeoutException} and counts as a failure.
+ *   The database call itself keeps its slot until it completes, so a stalled database cannot be flooded with new
+ *   calls.</li>
+ *   <li>After {@code failureThreshold} consecutive failures the circuit opens and every call fails right away.
+ *   After {@code openMs} a single probe call is let through; its success closes the circuit again.</li>
+ * </ul>
+ * Rejected calls fail with {@link RejectedExecutionException}, which the HTTP layer answers with 503. Business
+ * failures such as {@link LoginAlreadyPresentException} do not count against the circuit. Safe to share between
+ * verticle instances.
+ */
+@Slf4j
+public class StorageGuard {
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final Vertx vertx;
+  private final String name;
+  private final int maxInFlight;
+  private final long deadlineMs;
+  private final int failureThreshold;
+  private final long openNanos;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger consecutiveFailures = new AtomicInteger();
+  private long openedAt;
+  private volatile State state = State.CLOSED;
+
+  private final AtomicLong rejectedFull = new AtomicLong();
+  private final AtomicLong rejectedOpen = new AtomicLong();
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+
+  /**
+   * @param deadlineMs time after which a call fails, {@code 0} for no deadline
+   */
+  public StorageGuard(Vertx vertx, String name, int maxInFlight, long deadlineMs, int failureThreshold, long openMs) {
+    this.vertx = vertx;
+    this.name = name;
+    this.maxInFlight = maxInFlight;
+    this.deadlineMs = deadlineMs;
+    this.failureThreshold = failureThreshold;
+    this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+  }
+
+  public <T> Future<T> call(Supplier<Future<T>> operation) {
+    RejectedExecutionException rejection = acquire();
+    if (rejection != null) {
+      return Future.failedFuture(rejection);
+    }
+    Future<T> result;
+    try {
+      result = operation.get();
+    } catch (RuntimeException e) {
+      result = Future.failedFuture(e);
+    }
+    if (deadlineMs <= 0) {
+      return result.onComplete(res -> {
+        inFlight.decrementAndGet();
+        recordOutcome(succeeded(res.cause()));
+      });
+    }
+    Promise<T> promise = Promise.promise();
+    AtomicBoolean settled = new AtomicBoolean();
+    long timer = vertx.setTimer(deadlineMs, id -> {
+      if (settled.compareAndSet(false, true)) {
+        timeouts.incrementAndGet();
+        recordOutcome(false);
+        promise.fail(new TimeoutException("Storage " + name + " did not answer within " + deadlineMs + " ms"));
+      }
+    });
+    result.onComplete(res -> {
+      vertx.cancelTimer(timer);
+      inFlight.decrementAndGet();
+      if (settled.compareAndSet(false, true)) {
+        recordOutcome(succeeded(res.cause()));
+        promise.handle(res);
+      }
+    });
+    return promise.future();
+  }
+
+  /**
+   * Guards a stream, which holds its slot until it ends, fails or is cancelled by clearing its handler. Streams have
+   * no deadline, as their length depends on the number of items and how fast the client reads them. A cancelled
+   * stream says nothing about the database, so a cancelled probe hands probing over to the next call.
+   */
+  public <T> ReadStream<T> stream(Supplier<ReadStream<T>> operation) {
+    RejectedExecutionException rejection = acquire();
+    if (rejection != null) {
+      return new FailedReadStream<>(rejection);
+    }
+    return new GuardedReadStream<>(operation.get());
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  /**
+   * @return the circuit state ({@code 0} closed, {@code 1} open, {@code 2} half open), calls in flight and
+   * rejection, timeout and failure counts
+   */
+  public JsonObject stats() {
+    return new JsonObject()
+      .put("state", state.ordinal())
+      .put("inFlight", inFlight.get())
+      .put("rejectedFull", rejectedFull.get())
+      .put("rejectedOpen", rejectedOpen.get())
+      .put("timeouts", timeouts.get())
+      .put("failures", failures.get());
+  }
+
+  private RejectedExecutionException acquire() {
+    boolean probe = false;
+    if (state != State.CLOSED) {
+      if (!tryProbe()) {
+        rejectedOpen.incrementAndGet();
+        return new RejectedExecutionException("Storage " + name + " is unavailable");
+      }
+      probe = true;
+    }
+    if (inFlight.incrementAndGet() > maxInFlight) {
+      inFlight.decrementAndGet();
+      rejectedFull.incrementAndGet();
+      if (probe) {
+        open();
+      }
+      return new RejectedExecutionException("Storage " + name + " has too many calls in flight");
+    }
+    return null;
+  }
+
+  /**
+   * @return whether this call is the one probe let through once the circuit has been open long enough
+   */
+  private synchronized boolean tryProbe() {
+    if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+      state = State.HALF_OPEN;
+      log.info("Storage {} circuit half open, probing", name);
+      return true;
+    }
+    return false;
+  }
+
+  private void recordOutcome(boolean succeeded) {
+    if (succeeded) {
+      consecutiveFailures.set(0);
+      if (state == State.HALF_OPEN) {
+        close();
+      }
+      return;
+    }
+    failures.incrementAndGet();
+    if (consecutiveFailures.incrementAndGet() >= failureThreshold || state == State.HALF_OPEN) {
+      open();
+    }
+  }
+
+  /**
+   * Reopens a half open circuit whose probe ended without an outcome, so that the next call probes again right away.
+   */
+  private synchronized void abandonProbe() {
+    if (state == State.HALF_OPEN) {
+      state = State.OPEN;
+      openedAt = System.nanoTime() - openNanos;
+      log.info("Storage {} circuit probe cancelled, probing again", name);
+    }
+  }
+
+  private synchronized void close() {
+    if (state == State.HALF_OPEN) {
+      state = State.CLOSED;
+      log.info("Storage {} circuit closed", name);
+    }
+  }
+
+  private synchronized void open() {
+    if (state != State.OPEN) {
+      state = State.OPEN;
+      openedAt = System.nanoTime();
+      log.warn("Storage {} circuit opened after {} consecutive failures", name, consecutiveFailures.get());
+    }
+  }
+
+  private static boolean succeeded(Throwable cause) {
+    return cause == null || cause instanceof LoginAlreadyPresentException;
+  }
+
+  private class GuardedReadStream<T> implements ReadStream<T> {
+    private final ReadStream<T> delegate;
+    private boolean released;
+
+    private GuardedReadStream(ReadStream<T> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public ReadStream<T> exceptionHandler(Handler<Throwable> handler) {
+      delegate.exceptionHandler(throwable -> {
+        releaseOnce(false);
+        if (handler != null) {
+          handler.handle(throwable);
+        }
+      });
+      return this;
+    }
+
+    @Override
+    public ReadStream<T> handler(Handler<T> handler) {
+      delegate.handler(handler);
+      if (handler == null && !released) {
+        released = true;
+        inFlight.decrementAndGet();
+        abandonProbe();
+      }
+      return this;
+    }
+
+    @Override
+    public ReadStream<T> pause() {
+      delegate.pause();
+      return this;
+    }
+
+    @Override
+    public ReadStream<T> resume() {
+      delegate.resume();
+      return this;
+    }
+
+    @Override
+    public ReadStream<T> fetch(long amount) {
+      delegate.fetch(amount);
+      return this;
+    }
+
+    @Override
+    public ReadStream<T> endHandler(Handler<Void> endHandler) {
+      delegate.endHandler(v -> {
+        releaseOnce(true);
+        if (endHandler != null) {
+          endHandler.handle(v);
+        }
+      });
+      return this;
+    }
+
+    private void releaseOnce(boolean succeeded) {
+      if (!released) {
+        released = true;
+        inFlight.decrementAndGet();
+        recordOutcome(succeeded);
+      }
+    }
+  }
+
+  /**
+   * Stream that fails as soon as its item handler is set, i.e. once the consumer is ready to hear about it.
+   */
+  private static class FailedReadStream<T> implements ReadStream<T> {
+    private final Throwable cause;
+    private Handler<Throwable> exceptionHandler;
+    private boolean failed;
+
+    private FailedReadStream(Throwable cause) {
+      this.cause = cause;
+    }
+
+    @Override
+    public ReadStream<T> exceptionHandler(Handler<Throwable> handler) {
+      this.exceptionHandler = handler;
+      return this;
+    }
+
+    @Override
+    public ReadStream<T> handler(Handler<T> handler) {
+      if (handler != null && !failed && exceptionHandler != null) {
+        failed = true;
+        exceptionHandler.handle(cause);
+      }
+      return this;
+    }
+
+    @Override
+    public ReadStream<T> pause() {
+      return this;
+    }
+
+    @Override
+    public ReadStream<T> resume() {
+      return this;
+    }
+
+    @Override
+    public ReadStream<T> fetch(long amount) {
+      return this;
+    }
+
+    @Override
+    public ReadStream<T> endHandler(Handler<Void> endHandler) {
+      return this;
+    }
+  }
+}
@@ -0,0 +1,237 @@
+package com.code.block.rest_service.repository;
+
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of the titles of a user, with a time to live per entry. Users with more than
+ * {@code maxItemsPerUser} titles are never cached, so a single entry cannot grow without limit.
+ * <p>
+ * Saved titles are appended to a cached entry. A fill that started before a save of the same user is dropped,
+ * so the cache never holds a list older than the last local write. Each entry also carries the titles version it
+ * was read at, so a list older than the version a caller read, e.g. after a save through another node, is not
+ * served. Safe to share between verticle instances.
+ */
+public class TitleCache {
+
+  private final int maxUsers;
+  private final long ttlMs;
+  private final int maxItemsPerUser;
+
+  private final Map<String, CachedTitles> entries;
+  private final Map<String, Object> fills = new ConcurrentHashMap<>();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public TitleCache(int maxUsers, long ttlMs, int maxItemsPerUser) {
+    this.maxUsers = maxUsers;
+    this.ttlMs = ttlMs;
+    this.maxItemsPerUser = maxItemsPerUser;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedTitles> eldest) {
+        if (size() > TitleCache.this.maxUsers) {
+          evictions.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * @return the cached titles of the user or {@code null} when they are not cached, or were cached at a titles
+   * version older than {@code version}
+   */
+  public List<JsonObject> get(String userId, long version) {
+    synchronized (entries) {
+      CachedTitles entry = entries.get(userId);
+      if (entry != null && (entry.expiresAt < System.currentTimeMillis() || entry.version < version)) {
+        entries.remove(userId);
+        evictions.incrementAndGet();
+        entry = null;
+      }
+      if (entry == null) {
+        misses.incrementAndGet();
+        return null;
+      }
+      hits.incrementAndGet();
+      return entry.titles;
+    }
+  }
+
+  /**
+   * Marks the start of a storage read for the user; the returned token is passed to {@link #put}.
+   */
+  public Object beginFill(String userId) {
+    Object token = new Object();
+    fills.put(userId, token);
+    return token;
+  }
+
+  /**
+   * Passes the stream through while collecting its items, and caches them once the stream ends.
+   */
+  public ReadStream<JsonObject> fill(String userId, long version, ReadStream<JsonObject> titles) {
+    return new FillingReadStream(userId, version, beginFill(userId), titles);
+  }
+
+  /**
+   * Caches a complete title list read from storage at the given titles version, unless the user saved a title
+   * meanwhile.
+   */
+  public void put(String userId, long version, List<JsonObject> titles, Object token) {
+    if (!fills.remove(userId, token) || titles.size() > maxItemsPerUser) {
+      return;
+    }
+    synchronized (entries) {
+      entries.put(userId, new CachedTitles(Collections.unmodifiableList(new ArrayList<>(titles)), version,
+        System.currentTimeMillis() + ttlMs));
+    }
+  }
+
+  /**
+   * Records a saved title: appends it to the cached entry of the user and cancels fills in progress. The save
+   * raised the titles version by one, so the entry moves to the next version with it.
+   */
+  public void saved(String userId, JsonObject title) {
+    fills.remove(userId);
+    synchronized (entries) {
+      CachedTitles entry = entries.get(userId);
+      if (entry == null) {
+        return;
+      }
+      if (entry.titles.size() >= maxItemsPerUser) {
+        entries.remove(userId);
+        return;
+      }
+      List<JsonObject> titles = new ArrayList<>(entry.titles.size() + 1);
+      titles.addAll(entry.titles);
+      titles.add(title);
+      entries.put(userId, new CachedTitles(Collections.unmodifiableList(titles), entry.version + 1, entry.expiresAt));
+    }
+  }
+
+  public void invalidate(String userId) {
+    fills.remove(userId);
+    synchronized (entries) {
+      entries.remove(userId);
+    }
+  }
+
+  public JsonObject stats() {
+    int size;
+    synchronized (entries) {
+      size = entries.size();
+    }
+    return new JsonObject()
+      .put("size", size)
+      .put("hits", hits.get())
+      .put("misses", misses.get())
+      .put("evictions", evictions.get());
+  }
+
+  private static class CachedTitles {
+    private final List<JsonObject> titles;
+    private final long version;
+    private final long expiresAt;
+
+    private CachedTitles(List<JsonObject> titles, long version, long expiresAt) {
+      this.titles = titles;
+      this.version = version;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private class FillingReadStream implements ReadStream<JsonObject> {
+    private final String userId;
+    private final long version;
+    private final Object token;
+    private final ReadStream<JsonObject> source;
+    private List<JsonObject> collected = new ArrayList<>();
+
+    private FillingReadStream(String userId, long version, Object token, ReadStream<JsonObject> source) {
+      this.userId = userId;
+      this.version = version;
+      this.token = token;
+      this.source = source;
+    }
+
+    @Override
+    public ReadStream<JsonObject> exceptionHandler(Handler<Throwable> handler) {
+      source.exceptionHandler(throwable -> {
+        collected = null;
+        fills.remove(userId, token);
+        if (handler != null) {
+          handler.handle(throwable);
+        }
+      });
+      return this;
+    }
+
+    @Override
+    public ReadStream<JsonObject> handler(Handler<JsonObject> handler) {
+      if (handler == null) {
+        collected = null;
+        fills.remove(userId, token);
+        source.handler(null);
+        return this;
+      }
+      source.handler(item -> {
+        if (collected != null) {
+          if (collected.size() < maxItemsPerUser) {
+            collected.add(item);
+          } else {
+            collected = null;
+            fills.remove(userId, token);
+          }
+        }
+        handler.handle(item);
+      });
+      return this;
+    }
+
+    @Override
+    public ReadStream<JsonObject> pause() {
+      source.pause();
+      return this;
+    }
+
+    @Override
+    public ReadStream<JsonObject> resume() {
+      source.resume();
+      return this;
+    }
+
+    @Override
+    public ReadStream<JsonObject> fetch(long amount) {
+      source.fetch(amount);
+      return this;
+    }
+
+    @Override
+    public ReadStream<JsonObject> endHandler(Handler<Void> endHandler) {
+      source.endHandler(v -> {
+        if (collected != null) {
+          put(userId, version, collected, token);
+          collected = null;
+        }
+        if (endHandler != null) {
+          endHandler.handle(v);
+        }
+      });
+      return this;
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package com.code.block.rest_service.repository;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.BulkOperation;
+import io.vertx.ext.mongo.BulkWriteOptions;
+import io.vertx.ext.mongo.MongoClient;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Coalesces concurrent title inserts into unordered bulk writes. A batch is flushed when it reaches
+ * {@code maxBatchSize} documents or {@code flushIntervalMs} after its first document, whichever comes first.
+ * Ids are assigned before the write, so every caller gets its own id back on the context it called from.
+ * After each batch the titles versions of its users are raised with one {@code users} bulk write, see
+ * {@link MongoDao#raiseTitlesVersions}; an insert completes only once the version of its user was raised.
+ * Safe to share between verticle instances.
+ */
+@Slf4j
+public class TitleWriteBatcher {
+
+  private final Vertx vertx;
+  private final MongoClient mongoClient;
+  private final long flushIntervalMs;
+  private final int maxBatchSize;
+
+  private final AtomicLong flushedBatches = new AtomicLong();
+  private final AtomicLong flushedDocuments = new AtomicLong();
+  private final AtomicLong maxFlushedBatch = new AtomicLong();
+
+  private List<PendingInsert> queue = new ArrayList<>();
+  private long timerId = -1;
+
+  public TitleWriteBatcher(Vertx vertx, MongoClient mongoClient, long flushIntervalMs, int maxBatchSize) {
+    this.vertx = vertx;
+    this.mongoClient = mongoClient;
+    this.flushIntervalMs = flushIntervalMs;
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  public Future<String> insert(JsonObject title) {
+    Promise<String> promise = Promise.promise();
+    PendingInsert pending = new PendingInsert(MongoDao.withId(title), promise, vertx.getOrCreateContext());
+    List<PendingInsert> batch = null;
+    synchronized (this) {
+      queue.add(pending);
+      if (queue.size() >= maxBatchSize) {
+        batch = drain();
+      } else if (timerId == -1) {
+        timerId = vertx.setTimer(flushIntervalMs, id -> flushOnTimer());
+      }
+    }
+    if (batch != null) {
+      write(batch);
+    }
+    return promise.future();
+  }
+
+  public synchronized int queueDepth() {
+    return queue.size();
+  }
+
+  public JsonObject stats() {
+    long batches = flushedBatches.get();
+    long documents = flushedDocuments.get();
+    return new JsonObject()
+      .put("queueDepth", queueDepth())
+      .put("batches", batches)
+      .put("documents", documents)
+      .put("averageBatchSize", batches == 0 ? 0.0 : (double) documents / batches)
+      .put("maxBatchSize", maxFlushedBatch.get());
+  }
+
+  private void flushOnTimer() {
+    List<PendingInsert> batch;
+    synchronized (this) {
+      timerId = -1;
+      batch = drain();
+    }
+    if (!batch.isEmpty()) {
+      write(batch);
+    }
+  }
+
+  private List<PendingInsert> drain() {
+    if (timerId != -1) {
+      vertx.cancelTimer(timerId);
+      timerId = -1;
+    }
+    List<PendingInsert> batch = queue;
+    queue = new ArrayList<>();
+    return batch;
+  }
+
+  private void write(List<PendingInsert> batch) {
+    flushedBatches.incrementAndGet();
+    flushedDocuments.addAndGet(batch.size());
+    maxFlushedBatch.accumulateAndGet(batch.size(), Math::max);
+
+    List<BulkOperation> operations = batch.stream()
+      .map(pending -> BulkOperation.createInsert(pending.document))
+      .collect(Collectors.toList());
+    mongoClient.bulkWriteWithOptions("titles", operations, new BulkWriteOptions().setOrdered(false), res -> {
+      Map<Integer, String> errors = new HashMap<>();
+      if (res.failed() && !(res.cause() instanceof MongoBulkWriteException)) {
+        log.error("Batched insert of {} documents failed: {}", batch.size(), res.cause().getMessage());
+        batch.forEach(pending -> pending.fail(res.cause()));
+        return;
+      }
+      if (res.failed()) {
+        for (BulkWriteError error : ((MongoBulkWriteException) res.cause()).getWriteErrors()) {
+          errors.put(error.getIndex(), error.getMessage());
+        }
+        log.warn("Batched insert partially failed: {} of {} documents rejected", errors.size(), batch.size());
+      }
+      Map<String, Long> savedPerUser = new HashMap<>();
+      for (int i = 0; i < batch.size(); i++) {
+        String userId = batch.get(i).document.getString("userId");
+        if (!errors.containsKey(i) && userId != null) {
+          savedPerUser.merge(userId, 1L, Long::sum);
+        }
+      }
+      MongoDao.raiseTitlesVersions(mongoClient, savedPerUser).onComplete(raised -> {
+        for (int i = 0; i < batch.size(); i++) {
+          if (errors.containsKey(i)) {
+            batch.get(i).fail(new IllegalStateException(errors.get(i)));
+          } else if (raised.failed()) {
+            batch.get(i).fail(raised.cause());
+          } else {
+            batch.get(i).succeed();
+          }
+        }
+      });
+    });
+  }
+
+  private static class PendingInsert {
+    private final JsonObject document;
+    private final Promise<String> promise;
+    private final Context context;
+
+    private PendingInsert(JsonObject document, Promise<String> promise, Context context) {
+      this.document = document;
+      this.promise = promise;
+      this.context = context;
+    }
+
+    private void succeed() {
+      String id = document.getString("_id");
+      context.runOnContext(v -> promise.complete(id));
+    }
+
+    private void fail(Throwable cause) {
+      context.runOnContext(v -> promise.fail(cause));
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package com.code.block.rest_service.service;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.code.block.rest_service.utils.ResponseUtils.response;
+
+/**
+ * Decides which requests the service takes on. A global cap on requests in flight answers 503 as soon as the
+ * service is saturated, so admitted requests keep their latency instead of all of them queueing until they time
+ * out. Token buckets per user id, and per client address or login for the unauthenticated routes, answer 429.
+ * Both carry a {@code Retry-After} header. Safe to share between verticle instances.
+ */
+@Slf4j
+public class AdmissionControl {
+    public static final String RETRY_AFTER_HEADER = "Retry-After";
+    private static final String OVERLOADED_MSG = "Service overloaded, retry later";
+    private static final String TOO_MANY_REQUESTS_MSG = "Too many requests, retry later";
+
+    private final int maxInFlight;
+    private final RateLimiter userLimiter;
+    private final RateLimiter anonymousLimiter;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong shed = new AtomicLong();
+
+    /**
+     * @param maxInFlight      requests handled at the same time, {@code 0} for no limit
+     * @param userLimiter      limit per authenticated user id, or {@code null} for none
+     * @param anonymousLimiter limit per client address and per login on {@code /register} and {@code /login},
+     *                         or {@code null} for none
+     */
+    public AdmissionControl(int maxInFlight, RateLimiter userLimiter, RateLimiter anonymousLimiter) {
+        this.maxInFlight = maxInFlight;
+        this.userLimiter = userLimiter;
+        this.anonymousLimiter = anonymousLimiter;
+    }
+
+    /**
+     * @return admission control that lets every request through
+     */
+    public static AdmissionControl unlimited() {
+        return new AdmissionControl(0, null, null);
+    }
+
+    /**
+     * Rejects the request with 503 while {@code maxInFlight} requests are being handled, otherwise counts it until
+     * its response ends.
+     */
+    public void limitInFlight(RoutingContext routingContext) {
+        if (maxInFlight <= 0) {
+            routingContext.next();
+            return;
+        }
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            shed.incrementAndGet();
+            log.debug("Request shed, {} requests in flight", maxInFlight);
+            routingContext.response().putHeader(RETRY_AFTER_HEADER, "1");
+            response(routingContext, 503, OVERLOADED_MSG);
+            return;
+        }
+        routingContext.addEndHandler(res -> inFlight.decrementAndGet());
+        routingContext.next();
+    }
+
+    /**
+     * Applies the anonymous limit to the client address, before the body of the request is read.
+     */
+    public void limitByAddress(RoutingContext routingContext) {
+        if (admitAnonymous(routingContext, "address:" + routingContext.request().remoteAddress().host())) {
+            routingContext.next();
+        }
+    }
+
+    /**
+     * Applies the anonymous limit to a login, so guessing the password of one account does not scale with the
+     * number of client addresses.
+     *
+     * @return whether the request may proceed, otherwise it has been answered with 429
+     */
+    public boolean admitLogin(RoutingContext routingContext, String login) {
+        return admitAnonymous(routingContext, "login:" + login);
+    }
+
+    /**
+     * @return whether the request may proceed, otherwise it has been answered with 429
+     */
+    public boolean admitUser(RoutingContext routingContext, String userId) {
+        return admit(routingContext, userLimiter, userId);
+    }
+
+    public JsonObject stats() {
+        JsonObject stats = new JsonObject()
+                .put("inFlight", inFlight.get())
+                .put("shed", shed.get());
+        if (userLimiter != null) {
+            stats.put("userRateLimited", userLimiter.stats().getLong("rejected"));
+        }
+        if (anonymousLimiter != null) {
+            stats.put("anonymousRateLimited", anonymousLimiter.stats().getLong("rejected"));
+        }
+        return stats;
+    }
+
+    private boolean admitAnonymous(RoutingContext routingContext, String key) {
+        return admit(routingContext, anonymousLimiter, key);
+    }
+
+    private static boolean admit(RoutingContext routingContext, RateLimiter limiter, String key) {
+        if (limiter == null || key == null) {
+            return true;
+        }
+        long waitNanos = limiter.tryAcquire(key);
+        if (waitNanos == 0) {
+            return true;
+        }
+        log.debug("Request of {} rate limited", key);
+        long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        routingContext.response().putHeader(RETRY_AFTER_HEADER, Long.toString(retryAfter));
+        response(routingContext, 429, TOO_MANY_REQUESTS_MSG);
+        return false;
+    }
+}
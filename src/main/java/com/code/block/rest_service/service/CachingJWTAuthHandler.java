@@ -0,0 +1,131 @@
+package com.code.block.rest_service.service;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.User;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.handler.impl.JWTAuthHandlerImpl;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link JWTAuthHandlerImpl} that remembers successfully verified tokens, so repeated requests with the same
+ * bearer token skip signature verification. Entries live until the token's {@code exp} claim, but no longer
+ * than {@code maxTtlMs}. Lookups are lock-free; once the cache is full, expired entries are purged and, if
+ * still needed, arbitrary entries are dropped. Safe to share between verticle instances.
+ */
+public class CachingJWTAuthHandler extends JWTAuthHandlerImpl {
+    private static final String BEARER = "Bearer ";
+
+    private final int maxEntries;
+    private final long maxTtlMs;
+    private final Map<String, VerifiedToken> tokens = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong verifyNanos = new AtomicLong();
+
+    public CachingJWTAuthHandler(JWTAuth authProvider, int maxEntries, long maxTtlMs) {
+        super(authProvider, null);
+        this.maxEntries = maxEntries;
+        this.maxTtlMs = maxTtlMs;
+    }
+
+    @Override
+    public void authenticate(RoutingContext context, Handler<AsyncResult<User>> handler) {
+        String token = bearerToken(context);
+        if (token == null) {
+            super.authenticate(context, handler);
+            return;
+        }
+
+        VerifiedToken verified = tokens.get(token);
+        if (verified != null) {
+            if (verified.expiresAt > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                handler.handle(Future.succeededFuture(verified.user));
+                return;
+            }
+            tokens.remove(token, verified);
+        }
+
+        long start = System.nanoTime();
+        super.authenticate(context, res -> {
+            misses.incrementAndGet();
+            verifyNanos.addAndGet(System.nanoTime() - start);
+            if (res.succeeded()) {
+                remember(token, res.result());
+            }
+            handler.handle(res);
+        });
+    }
+
+    public void invalidate(String token) {
+        tokens.remove(token);
+    }
+
+    /**
+     * @return hit and miss counts, the average verification time of a miss and the verification time saved by hits
+     */
+    public JsonObject stats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long averageVerifyNanos = missCount == 0 ? 0 : verifyNanos.get() / missCount;
+        return new JsonObject()
+                .put("size", tokens.size())
+                .put("hits", hitCount)
+                .put("misses", missCount)
+                .put("averageVerifyNanos", averageVerifyNanos)
+                .put("savedNanos", hitCount * averageVerifyNanos);
+    }
+
+    private void remember(String token, User user) {
+        long now = System.currentTimeMillis();
+        long expiresAt = now + maxTtlMs;
+        Long exp = user.attributes().getLong("exp", user.principal().getLong("exp"));
+        if (exp != null) {
+            expiresAt = Math.min(expiresAt, exp * 1000);
+        }
+        if (expiresAt <= now) {
+            return;
+        }
+        if (tokens.size() >= maxEntries) {
+            evict(now);
+        }
+        tokens.put(token, new VerifiedToken(user, expiresAt));
+    }
+
+    private void evict(long now) {
+        tokens.values().removeIf(verified -> verified.expiresAt <= now);
+        Iterator<String> iterator = tokens.keySet().iterator();
+        while (tokens.size() >= maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static String bearerToken(RoutingContext context) {
+        String authorization = context.request().getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorization == null || !authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            return null;
+        }
+        return authorization.substring(BEARER.length()).trim();
+    }
+
+    private static class VerifiedToken {
+        private final User user;
+        private final long expiresAt;
+
+        private VerifiedToken(User user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.code.block.rest_service.service;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.code.block.rest_service.utils.ResponseUtils.response;
+
+/**
+ * Serves {@code /health/live} and {@code /health/ready} for load balancers. Liveness only tells the process still
+ * answers. Readiness is withheld until the warm-up has finished and then depends on the registered checks, e.g. a
+ * storage query. Their outcome is cached for {@code cacheMs}, so frequent probes of many balancers cost one run of
+ * the checks, and probes arriving while the checks run wait for that run. Safe to share between verticle instances.
+ */
+@Slf4j
+public class HealthCheck {
+    private static final String STATUS = "status";
+    private static final String UP = "UP";
+    private static final String DOWN = "DOWN";
+
+    private final long cacheNanos;
+    private final Map<String, Supplier<Future<?>>> checks = new LinkedHashMap<>();
+    private volatile boolean warmedUp;
+    private Future<JsonObject> lastResult;
+    private long lastRunAt;
+
+    /**
+     * @param cacheMs time the outcome of the checks is reused for
+     */
+    public HealthCheck(long cacheMs) {
+        this.cacheNanos = TimeUnit.MILLISECONDS.toNanos(cacheMs);
+    }
+
+    /**
+     * @return health check without checks that is ready right away
+     */
+    public static HealthCheck alwaysReady() {
+        HealthCheck healthCheck = new HealthCheck(0);
+        healthCheck.markWarmedUp();
+        return healthCheck;
+    }
+
+    /**
+     * Adds a readiness check, which fails its future when the instance should not receive traffic.
+     */
+    public synchronized HealthCheck addCheck(String name, Supplier<Future<?>> check) {
+        checks.put(name, check);
+        return this;
+    }
+
+    public void markWarmedUp() {
+        if (!warmedUp) {
+            warmedUp = true;
+            log.info("Warm-up finished, instance is ready for traffic");
+        }
+    }
+
+    public boolean isWarmedUp() {
+        return warmedUp;
+    }
+
+    public void live(RoutingContext routingContext) {
+        response(routingContext, 200, "Live", new JsonObject().put(STATUS, UP).encode());
+    }
+
+    public void ready(RoutingContext routingContext) {
+        if (!warmedUp) {
+            response(routingContext, 503, "Warming up", new JsonObject().put(STATUS, DOWN).put("warmedUp", false).encode());
+            return;
+        }
+        Context context = routingContext.vertx().getOrCreateContext();
+        check().onComplete(res -> context.runOnContext(v -> {
+            JsonObject result = res.result();
+            boolean up = UP.equals(result.getString(STATUS));
+            response(routingContext, up ? 200 : 503, up ? "Ready" : "Not ready", result.encode());
+        }));
+    }
+
+    /**
+     * @return whether the instance is warmed up ({@code 0} or {@code 1}) and the outcome of the last checks
+     * ({@code 1} when all passed)
+     */
+    public synchronized JsonObject stats() {
+        boolean checksPassed = lastResult != null && lastResult.succeeded()
+                && UP.equals(lastResult.result().getString(STATUS));
+        return new JsonObject()
+                .put("warmedUp", warmedUp ? 1 : 0)
+                .put("checksPassed", checksPassed ? 1 : 0);
+    }
+
+    /**
+     * @return the outcome of the checks, reused while it is fresh or still being computed; never fails
+     */
+    private synchronized Future<JsonObject> check() {
+        long now = System.nanoTime();
+        if (lastResult != null && (!lastResult.isComplete() || now - lastRunAt < cacheNanos)) {
+            return lastResult;
+        }
+        lastRunAt = now;
+        List<String> names = new ArrayList<>(checks.keySet());
+        List<Future<?>> results = new ArrayList<>();
+        for (Supplier<Future<?>> check : checks.values()) {
+            Future<?> result;
+            try {
+                result = check.get();
+            } catch (RuntimeException e) {
+                result = Future.failedFuture(e);
+            }
+            results.add(result);
+        }
+        lastResult = CompositeFuture.join(new ArrayList<>(results)).transform(res -> {
+            JsonObject details = new JsonObject();
+            boolean up = true;
+            for (int i = 0; i < names.size(); i++) {
+                Future<?> result = results.get(i);
+                if (result.succeeded()) {
+                    details.put(names.get(i), UP);
+                } else {
+                    up = false;
+                    details.put(names.get(i), DOWN + ": " + result.cause().getMessage());
+                    log.warn("Readiness check {} failed: {}", names.get(i), result.cause().getMessage());
+                }
+            }
+            return Future.succeededFuture(new JsonObject().put(STATUS, up ? UP : DOWN).put("checks", details));
+        });
+        return lastResult;
+    }
+}
@@ -0,0 +1,190 @@
+package com.code.block.rest_service.service;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.code.block.rest_service.utils.ResponseUtils.response;
+
+/**
+ * Pushes newly saved items to the open Server-Sent Events connections of their user. Saved items are published on
+ * the event bus address {@value SAVED_ADDRESS}, so items saved by any instance or, in a clustered Vert.x, any node
+ * reach every connection. Each connection is written from its own event loop and buffers at most
+ * {@code maxPendingEvents} events not yet handed to it and {@code maxBufferedBytes} not yet sent; a consumer that
+ * falls further behind is disconnected instead of growing the heap. Safe to share between verticle instances.
+ */
+@Slf4j
+public class ItemFeed {
+    public static final String SAVED_ADDRESS = "rest.items.saved";
+    public static final String EVENT_STREAM_CONTENT_TYPE = "text/event-stream";
+    private static final Buffer CONNECTED = Buffer.buffer(": connected\n\n");
+    private static final Buffer HEARTBEAT = Buffer.buffer(": heartbeat\n\n");
+
+    private final Vertx vertx;
+    private final int maxConnections;
+    private final int maxPendingEvents;
+    private final int maxBufferedBytes;
+    private final long heartbeatMs;
+    private final Map<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param vertx       event bus to share saved items over, or {@code null} to deliver them within this instance
+     * @param heartbeatMs interval of comments that keep idle connections open through proxies, {@code 0} for none
+     */
+    public ItemFeed(Vertx vertx, int maxConnections, int maxPendingEvents, int maxBufferedBytes, long heartbeatMs) {
+        this.vertx = vertx;
+        this.maxConnections = maxConnections;
+        this.maxPendingEvents = maxPendingEvents;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.heartbeatMs = heartbeatMs;
+        if (vertx != null) {
+            vertx.eventBus().<JsonObject>consumer(SAVED_ADDRESS,
+                    message -> deliver(message.body().getString("userId"), message.body().getJsonObject("item")));
+        }
+    }
+
+    public void publish(String userId, JsonObject item) {
+        if (vertx == null) {
+            deliver(userId, item);
+            return;
+        }
+        vertx.eventBus().publish(SAVED_ADDRESS, new JsonObject().put("userId", userId).put("item", item));
+    }
+
+    /**
+     * Answers the request with an event stream of the items the user saves from now on. Each item is sent as an
+     * {@code item} event with its {@code _id} as event id and its JSON as data.
+     */
+    public void subscribe(RoutingContext routingContext, String userId) {
+        if (connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            rejected.incrementAndGet();
+            log.debug("Item stream rejected, {} connections open", maxConnections);
+            routingContext.response().putHeader(AdmissionControl.RETRY_AFTER_HEADER, "1");
+            response(routingContext, 503, "Too many item streams, retry later");
+            return;
+        }
+        HttpServerResponse response = routingContext.response()
+                .setChunked(true)
+                .putHeader(HttpHeaders.CONTENT_TYPE, EVENT_STREAM_CONTENT_TYPE)
+                .putHeader(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .putHeader(HttpHeaders.CONTENT_ENCODING, HttpHeaders.IDENTITY)
+                .setWriteQueueMaxSize(maxBufferedBytes);
+        Subscriber subscriber = new Subscriber(userId, response, routingContext.vertx().getOrCreateContext());
+        // added inside compute, as a set emptied by a concurrent remove may be unmapped between a lookup and an add
+        subscribers.compute(userId, (id, userSubscribers) -> {
+            Set<Subscriber> added = userSubscribers == null ? ConcurrentHashMap.newKeySet() : userSubscribers;
+            added.add(subscriber);
+            return added;
+        });
+        response.closeHandler(v -> remove(subscriber));
+        response.exceptionHandler(error -> remove(subscriber));
+        if (heartbeatMs > 0) {
+            subscriber.heartbeat = routingContext.vertx().setPeriodic(heartbeatMs, id -> subscriber.write(HEARTBEAT));
+        }
+        response.write(CONNECTED.copy());
+        log.debug("User with id: {} subscribed to items", userId);
+    }
+
+    public JsonObject stats() {
+        return new JsonObject()
+                .put("connections", connections.get())
+                .put("delivered", delivered.get())
+                .put("dropped", dropped.get())
+                .put("rejected", rejected.get());
+    }
+
+    private void deliver(String userId, JsonObject item) {
+        Set<Subscriber> userSubscribers = subscribers.get(userId);
+        if (userSubscribers == null) {
+            return;
+        }
+        Buffer event = Buffer.buffer("id: " + item.getString("_id") + "\nevent: item\ndata: " + item.encode() + "\n\n");
+        for (Subscriber subscriber : userSubscribers) {
+            if (subscriber.pending.incrementAndGet() > maxPendingEvents) {
+                drop(subscriber);
+                continue;
+            }
+            subscriber.context.runOnContext(v -> {
+                subscriber.pending.decrementAndGet();
+                if (!subscriber.closed.get()) {
+                    // counted before the write, so the count already includes an event its client has read
+                    delivered.incrementAndGet();
+                    subscriber.write(event);
+                }
+            });
+        }
+    }
+
+    private void drop(Subscriber subscriber) {
+        if (remove(subscriber)) {
+            dropped.incrementAndGet();
+            log.debug("Slow item stream of user with id: {} dropped", subscriber.userId);
+            subscriber.context.runOnContext(v -> subscriber.response.reset());
+        }
+    }
+
+    /**
+     * @return whether the subscriber was still registered
+     */
+    private boolean remove(Subscriber subscriber) {
+        if (!subscriber.closed.compareAndSet(false, true)) {
+            return false;
+        }
+        connections.decrementAndGet();
+        if (subscriber.heartbeat >= 0) {
+            subscriber.context.owner().cancelTimer(subscriber.heartbeat);
+        }
+        subscribers.computeIfPresent(subscriber.userId, (id, userSubscribers) -> {
+            userSubscribers.remove(subscriber);
+            return userSubscribers.isEmpty() ? null : userSubscribers;
+        });
+        return true;
+    }
+
+    private class Subscriber {
+        private final String userId;
+        private final HttpServerResponse response;
+        private final Context context;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile long heartbeat = -1;
+
+        private Subscriber(String userId, HttpServerResponse response, Context context) {
+            this.userId = userId;
+            this.response = response;
+            this.context = context;
+        }
+
+        /**
+         * Writes from the event loop of the connection, unless it is closed; a connection that cannot keep up with
+         * its writes is dropped.
+         */
+        private void write(Buffer data) {
+            if (closed.get()) {
+                return;
+            }
+            response.write(data.copy());
+            if (response.writeQueueFull()) {
+                drop(this);
+            }
+        }
+    }
+}
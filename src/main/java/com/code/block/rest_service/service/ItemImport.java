@@ -0,0 +1,188 @@
+package com.code.block.rest_service.service;
+
+import com.code.block.rest_service.repository.Storage;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.parsetools.RecordParser;
+import io.vertx.core.streams.ReadStream;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Imports newline-delimited JSON titles of a single user. Lines are parsed as they arrive and written in
+ * batches; the request is paused while a batch is being written, so at most one batch is held in memory.
+ */
+@Slf4j
+class ItemImport {
+    static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    private final Storage storage;
+    private final String userId;
+    private final int batchSize;
+    private final Promise<JsonObject> promise = Promise.promise();
+    private final JsonArray batches = new JsonArray();
+    private final JsonArray errors = new JsonArray();
+
+    private RecordParser parser;
+    private List<JsonObject> batch = new ArrayList<>();
+    private long lineNumber;
+    private long inserted;
+    private long failed;
+    private boolean writing;
+    private boolean ended;
+
+    ItemImport(Storage storage, String userId, int batchSize) {
+        this.storage = storage;
+        this.userId = userId;
+        this.batchSize = batchSize;
+    }
+
+    Future<JsonObject> run(ReadStream<Buffer> body) {
+        parser = RecordParser.newDelimited("\n", new TerminatedBody(body)).maxRecordSize(MAX_LINE_LENGTH);
+        parser.exceptionHandler(promise::tryFail);
+        parser.endHandler(v -> {
+            ended = true;
+            if (!writing) {
+                flush();
+            }
+        });
+        parser.handler(this::handleLine);
+        body.resume();
+        return promise.future();
+    }
+
+    private void handleLine(Buffer line) {
+        lineNumber++;
+        String value = line.toString().trim();
+        if (value.isEmpty()) {
+            return;
+        }
+        try {
+            String title = new JsonObject(value).getString("title");
+            if (title == null) {
+                reject("Title field not present");
+                return;
+            }
+            batch.add(new JsonObject().put("title", title).put("userId", userId));
+        } catch (DecodeException | ClassCastException e) {
+            reject("Invalid JSON");
+            return;
+        }
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    private void reject(String error) {
+        failed++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new JsonObject().put("line", lineNumber).put("error", error));
+        }
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) {
+            if (ended) {
+                complete();
+            }
+            return;
+        }
+        List<JsonObject> toWrite = batch;
+        batch = new ArrayList<>();
+        writing = true;
+        parser.pause();
+        storage.saveTitles(toWrite)
+                .otherwise(throwable -> {
+                    log.error("Import batch failed to save: {}", throwable.getMessage());
+                    return 0L;
+                })
+                .onSuccess(count -> {
+                    long batchFailed = toWrite.size() - count;
+                    inserted += count;
+                    failed += batchFailed;
+                    batches.add(new JsonObject().put("inserted", count).put("failed", batchFailed));
+                    writing = false;
+                    if (ended) {
+                        flush();
+                    } else {
+                        parser.resume();
+                    }
+                });
+    }
+
+    private void complete() {
+        promise.tryComplete(new JsonObject()
+                .put("inserted", inserted)
+                .put("failed", failed)
+                .put("batches", batches)
+                .put("errors", errors));
+    }
+
+    /**
+     * Request body followed by a final newline, so the parser also emits a last line the client did not terminate;
+     * it only emits records once their delimiter arrives. A body that already ends in a newline gets an empty last
+     * line, which is skipped.
+     */
+    private static class TerminatedBody implements ReadStream<Buffer> {
+        private static final Buffer NEWLINE = Buffer.buffer("\n");
+
+        private final ReadStream<Buffer> body;
+        private Handler<Buffer> handler;
+
+        private TerminatedBody(ReadStream<Buffer> body) {
+            this.body = body;
+        }
+
+        @Override
+        public ReadStream<Buffer> exceptionHandler(Handler<Throwable> handler) {
+            body.exceptionHandler(handler);
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> handler(Handler<Buffer> handler) {
+            this.handler = handler;
+            body.handler(handler);
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> pause() {
+            body.pause();
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> resume() {
+            body.resume();
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> fetch(long amount) {
+            body.fetch(amount);
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> endHandler(Handler<Void> endHandler) {
+            body.endHandler(v -> {
+                if (handler != null) {
+                    handler.handle(NEWLINE.copy());
+                }
+                if (endHandler != null) {
+                    endHandler.handle(v);
+                }
+            });
+            return this;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.code.block.rest_service.service;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Salted PBKDF2-HMAC-SHA256 password hashing on a dedicated worker pool. At most {@code maxPending} hashes are
+ * queued or running; further requests fail fast with a {@link RejectedExecutionException}.
+ * <p>
+ * The iteration count of new hashes follows {@code targetMillis}: it is recalculated from the measured cost of
+ * every hash, but never drops below {@code minIterations}. Each hash stores its own iteration count, so older
+ * hashes stay verifiable. Hashes have the form {@code pbkdf2-sha256$iterations$salt$hash}.
+ */
+public class PasswordHasher {
+    private static final String PREFIX = "pbkdf2-sha256";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final byte[] UNKNOWN_USER_SALT = new byte[SALT_BYTES];
+
+    private final WorkerExecutor executor;
+    private final int maxPending;
+    private final long targetNanos;
+    private final int minIterations;
+    private final SecureRandom random = new SecureRandom();
+
+    private final AtomicInteger iterations;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong hashes = new AtomicLong();
+    private final AtomicLong hashNanos = new AtomicLong();
+    private final AtomicLong queueNanos = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public PasswordHasher(Vertx vertx, int poolSize, int maxPending, long targetMillis, int minIterations) {
+        this.executor = vertx.createSharedWorkerExecutor("password-hashing", poolSize);
+        this.maxPending = maxPending;
+        this.targetNanos = targetMillis * 1_000_000;
+        this.minIterations = minIterations;
+        this.iterations = new AtomicInteger(minIterations);
+    }
+
+    public static boolean isHash(String stored) {
+        return stored != null && stored.startsWith(PREFIX + "$");
+    }
+
+    public Future<String> hash(String password) {
+        return submit(() -> {
+            int rounds = iterations.get();
+            byte[] salt = new byte[SALT_BYTES];
+            random.nextBytes(salt);
+            long start = System.nanoTime();
+            byte[] hash = pbkdf2(password, salt, rounds);
+            adjustIterations(rounds, System.nanoTime() - start);
+            Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+            return PREFIX + "$" + rounds + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+        });
+    }
+
+    /**
+     * Checks the password against a stored hash. Values stored before hashing was introduced are compared as
+     * plain text, callers should then replace them with {@link #hash}.
+     */
+    public Future<Boolean> verify(String password, String stored) {
+        if (stored == null) {
+            return Future.succeededFuture(false);
+        }
+        if (!isHash(stored)) {
+            return Future.succeededFuture(MessageDigest.isEqual(
+                    password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8)));
+        }
+        return submit(() -> {
+            String[] parts = stored.split("\\$");
+            if (parts.length != 4) {
+                return false;
+            }
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] expected = decoder.decode(parts[3]);
+            byte[] actual = pbkdf2(password, decoder.decode(parts[2]), Integer.parseInt(parts[1]));
+            return MessageDigest.isEqual(expected, actual);
+        });
+    }
+
+    /**
+     * Costs as much as verifying a password against a current hash and never matches, for logins that do not exist,
+     * so the response time does not tell which logins do.
+     */
+    public Future<Boolean> verifyUnknown(String password) {
+        return submit(() -> {
+            pbkdf2(password, UNKNOWN_USER_SALT, iterations.get());
+            return false;
+        });
+    }
+
+    public JsonObject stats() {
+        long count = hashes.get();
+        return new JsonObject()
+                .put("iterations", iterations.get())
+                .put("pending", pending.get())
+                .put("hashes", count)
+                .put("rejected", rejected.get())
+                .put("averageHashNanos", count == 0 ? 0 : hashNanos.get() / count)
+                .put("averageQueueNanos", count == 0 ? 0 : queueNanos.get() / count);
+    }
+
+    private <T> Future<T> submit(HashTask<T> task) {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            rejected.incrementAndGet();
+            return Future.failedFuture(new RejectedExecutionException("Password hashing queue is full"));
+        }
+        long submitted = System.nanoTime();
+        return executor.<T>executeBlocking(promise -> {
+            long start = System.nanoTime();
+            queueNanos.addAndGet(start - submitted);
+            // counted before completing, so the stats already include a hash whose caller has been answered
+            try {
+                T result = task.run();
+                countHash(start);
+                promise.complete(result);
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                countHash(start);
+                promise.fail(e);
+            }
+        }, false).onComplete(res -> pending.decrementAndGet());
+    }
+
+    private void countHash(long start) {
+        hashNanos.addAndGet(System.nanoTime() - start);
+        hashes.incrementAndGet();
+    }
+
+    private void adjustIterations(int rounds, long elapsedNanos) {
+        if (elapsedNanos <= 0) {
+            return;
+        }
+        long next = rounds * targetNanos / elapsedNanos;
+        // move halfway towards the target to smooth out noisy measurements
+        long smoothed = (rounds + next) / 2;
+        iterations.set((int) Math.max(minIterations, Math.min(Integer.MAX_VALUE, smoothed)));
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int rounds) throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, rounds, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    @FunctionalInterface
+    private interface HashTask<T> {
+        T run() throws GeneralSecurityException;
+    }
+}
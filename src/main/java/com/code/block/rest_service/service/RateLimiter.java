@@ -0,0 +1,112 @@
+package com.code.block.rest_service.service;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket per key, e.g. per user id or client address. Every bucket holds up to {@code burst} tokens and
+ * refills at {@code ratePerSecond}; a request takes one token or is rejected. Once {@code maxKeys} buckets exist,
+ * full buckets are dropped, as they behave exactly like new ones; this sweep runs at most once per second, so its
+ * cost is not paid per request. A bucket that is not full is never dropped, as that would hand its key a fresh
+ * burst; while no room is left, requests of new keys are rejected instead. Safe to share between verticle instances.
+ */
+public class RateLimiter {
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final double tokensPerNano;
+    private final double burst;
+    private final int maxKeys;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong rejectedNewKeys = new AtomicLong();
+
+    public RateLimiter(double ratePerSecond, int burst, int maxKeys) {
+        if (ratePerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate has to be positive and burst at least 1");
+        }
+        this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.maxKeys = maxKeys;
+        this.lastSweep = new AtomicLong(System.nanoTime() - SWEEP_INTERVAL_NANOS);
+    }
+
+    /**
+     * @return {@code 0} when the request may proceed, otherwise the nanoseconds until the key has a token again
+     * or, for a new key while all buckets are in use, until the next sweep
+     */
+    public long tryAcquire(String key) {
+        long now = System.nanoTime();
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxKeys && !sweep(now)) {
+                rejected.incrementAndGet();
+                rejectedNewKeys.incrementAndGet();
+                return Math.max(1, lastSweep.get() + SWEEP_INTERVAL_NANOS - now);
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new Bucket(burst, now));
+        }
+        long waitNanos = bucket.take(now);
+        (waitNanos == 0 ? admitted : rejected).incrementAndGet();
+        return waitNanos;
+    }
+
+    public JsonObject stats() {
+        return new JsonObject()
+                .put("keys", buckets.size())
+                .put("admitted", admitted.get())
+                .put("rejected", rejected.get())
+                .put("rejectedNewKeys", rejectedNewKeys.get());
+    }
+
+    /**
+     * Drops the full buckets, unless another sweep ran less than a second ago or is running.
+     *
+     * @return whether there is room for a new bucket
+     */
+    private boolean sweep(long now) {
+        long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL_NANOS || !lastSweep.compareAndSet(last, now)) {
+            return false;
+        }
+        buckets.values().removeIf(bucket -> bucket.isFull(now));
+        return buckets.size() < maxKeys;
+    }
+
+    private class Bucket {
+        private double tokens;
+        private long updatedAt;
+
+        private Bucket(double tokens, long updatedAt) {
+            this.tokens = tokens;
+            this.updatedAt = updatedAt;
+        }
+
+        private synchronized long take(long now) {
+            refill(now);
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano));
+        }
+
+        private synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= burst;
+        }
+
+        private void refill(long now) {
+            if (now > updatedAt) {
+                tokens = Math.min(burst, tokens + (now - updatedAt) * tokensPerNano);
+                updatedAt = now;
+            }
+        }
+    }
+}
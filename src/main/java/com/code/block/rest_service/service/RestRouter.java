@@ -1,111 +1,270 @@
 package com.code.block.rest_service.service;
 
-import com.code.block.rest_service.repository.MongoDao;
+import com.code.block.rest_service.metrics.Metrics;
+import com.code.block.rest_service.metrics.RequestTiming;
+import com.code.block.rest_service.repository.Storage;
+import com.code.block.rest_service.utils.MediaFormat;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.JsonObject;
-import io.vertx.ext.auth.JWTOptions;
-import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.User;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.impl.JWTAuthHandlerImpl;
 import lombok.extern.slf4j.Slf4j;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.code.block.rest_service.metrics.RequestTiming.Phase.AUTH;
+import static com.code.block.rest_service.metrics.RequestTiming.Phase.HASH;
+import static com.code.block.rest_service.metrics.RequestTiming.Phase.SERIALIZATION;
+import static com.code.block.rest_service.metrics.RequestTiming.Phase.SIGN;
+import static com.code.block.rest_service.metrics.RequestTiming.Phase.STORAGE;
+import static com.code.block.rest_service.metrics.RequestTiming.Phase.VALIDATION;
+import static com.code.block.rest_service.utils.ResponseUtils.ndjsonResponse;
 import static com.code.block.rest_service.utils.ResponseUtils.response;
 
 @Slf4j
 public class RestRouter extends AbstractVerticle {
 
     private final JWTAuthHandlerImpl jwtHandler;
-    private final JWTAuth provider;
-    private final MongoDao mongoDao;
+    private final TokenIssuer tokenIssuer;
+    private final PasswordHasher passwordHasher;
+    private final Storage storage;
+    private final Metrics metrics;
+    private final AdmissionControl admissionControl;
+    private final HealthCheck healthCheck;
+    private final TokenRevocations tokenRevocations;
+    private final ItemFeed itemFeed;
+    private final TitleSearch titleSearch;
 
     private static final String MISSING_JSON_BODY_MSG = "Json body not included in request";
     private static final String LOGIN = "login";
     private static final String PASSWORD = "password";
+    private static final String INCORRECT_CREDENTIALS_MSG = "User login or password incorrect";
+    private static final String SERVICE_BUSY_MSG = "Service busy, retry later";
+    private static final String LIMIT = "limit";
+    private static final String AFTER = "after";
+    private static final String NEXT_CURSOR_HEADER = "Next-Cursor";
+    private static final String ITEMS_FAILED_MSG = "Items failed to get";
+    private static final String UNSUPPORTED_CONTENT_TYPE_MSG = "Unsupported content type";
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int IMPORT_BATCH_SIZE = 500;
+    private static final String TOKEN_ID = "jti";
+    private static final String EXPIRES_AT = "exp";
+    private static final String QUERY = "q";
 
-    public RestRouter(JWTAuthHandlerImpl jwtHandler, JWTAuth provider, MongoDao mongoDao) {
+    /**
+     * Takes every collaborator from the caller, so limits are configured in one place, {@code RestServiceFactory}.
+     *
+     * @param tokenRevocations revoked tokens, which are rejected like invalid ones
+     * @param itemFeed         pushes saved items to the open {@code /items/stream} connections of their user
+     * @param titleSearch      answers {@code GET /items?q=} from an in-memory index
+     */
+    public RestRouter(JWTAuthHandlerImpl jwtHandler, TokenIssuer tokenIssuer, PasswordHasher passwordHasher, Storage storage,
+                      Metrics metrics, AdmissionControl admissionControl, HealthCheck healthCheck,
+                      TokenRevocations tokenRevocations, ItemFeed itemFeed, TitleSearch titleSearch) {
         this.jwtHandler = jwtHandler;
-        this.provider = provider;
-        this.mongoDao = mongoDao;
+        this.tokenIssuer = tokenIssuer;
+        this.passwordHasher = passwordHasher;
+        this.storage = storage;
+        this.metrics = metrics;
+        this.admissionControl = admissionControl;
+        this.healthCheck = healthCheck;
+        this.tokenRevocations = tokenRevocations;
+        this.itemFeed = itemFeed;
+        this.titleSearch = titleSearch;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public AdmissionControl getAdmissionControl() {
+        return admissionControl;
+    }
+
+    public TokenRevocations getTokenRevocations() {
+        return tokenRevocations;
+    }
+
+    public ItemFeed getItemFeed() {
+        return itemFeed;
+    }
+
+    public TitleSearch getTitleSearch() {
+        return titleSearch;
+    }
+
+    public HealthCheck getHealthCheck() {
+        return healthCheck;
     }
 
     public void register(RoutingContext routingContext) {
+        RequestTiming timing = RequestTiming.of(routingContext);
+        timing.begin(VALIDATION);
         JsonObject user = routingContext.body().asJsonObject();
-        if (user == null) {
-            String message = MISSING_JSON_BODY_MSG;
-            log.debug(message);
-            response(routingContext, 400, message);
+        String invalid = validateCredentials(user);
+        if (invalid != null) {
+            log.debug(invalid);
+            response(routingContext, 400, invalid);
             return;
         }
         String loginValue = user.getString(LOGIN);
         String passwordValue = user.getString(PASSWORD);
-        if (passwordValue == null || loginValue == null) {
-            String message = "User or password field not present in request JSON";
-            log.debug(message);
-            response(routingContext, 400, message);
-            return;
-        }
 
-        mongoDao.isLoginPresent(loginValue)
-                .compose(isPresent -> {
-            if (Boolean.TRUE.equals(isPresent)) {
-                return Future.failedFuture(new RuntimeException("User login already present"));
-            } else {
-                JsonObject userToSave = new JsonObject()
-                        .put(LOGIN, loginValue)
-                        .put(PASSWORD, passwordValue);
+        timing.end(VALIDATION);
+        timing.time(HASH, () -> passwordHasher.hash(passwordValue))
+                .compose(hash -> {
+                    JsonObject userToSave = new JsonObject()
+                            .put(LOGIN, loginValue)
+                            .put(PASSWORD, hash);
 
-                return mongoDao.saveUser(userToSave);
-            }
-        }).onSuccess(res -> {
-            String message = String.format("User: '%s' registered successfully", loginValue);
-            log.debug(message);
-            response(routingContext, 200, message);
-        }).onFailure(error -> {
-            String message = "Error while registering user: " + error.getMessage();
-            log.warn(message);
-            response(routingContext, 500, message);
-        });
+                    return timing.time(STORAGE, () -> storage.saveUser(userToSave));
+                })
+                .onSuccess(res -> {
+                    String message = String.format("User: '%s' registered successfully", loginValue);
+                    log.debug(message);
+                    response(routingContext, 200, message);
+                })
+                .onFailure(error -> {
+                    if (isUnavailable(error)) {
+                        log.warn("Registration rejected: {}", error.getMessage());
+                        routingContext.response().putHeader(AdmissionControl.RETRY_AFTER_HEADER, "1");
+                        response(routingContext, 503, SERVICE_BUSY_MSG);
+                        return;
+                    }
+                    String message = "Error while registering user: " + error.getMessage();
+                    log.warn(message);
+                    response(routingContext, 500, message);
+                });
     }
 
     public void login(RoutingContext routingContext) {
+        RequestTiming timing = RequestTiming.of(routingContext);
+        timing.begin(VALIDATION);
         JsonObject user = routingContext.body().asJsonObject();
-
-        if (user == null) {
-            String message = MISSING_JSON_BODY_MSG;
-            log.debug(message);
-            response(routingContext, 400, message);
+        String invalid = validateCredentials(user);
+        if (invalid != null) {
+            log.debug(invalid);
+            response(routingContext, 400, invalid);
             return;
         }
         String loginValue = user.getString(LOGIN);
         String passwordValue = user.getString(PASSWORD);
-        if (passwordValue == null || loginValue == null) {
-            String message = "User or password field not present in request JSON";
-            log.debug(message);
-            response(routingContext, 400, message);
+
+        timing.end(VALIDATION);
+        if (!admissionControl.admitLogin(routingContext, loginValue)) {
             return;
         }
-
-        mongoDao.getUser(loginValue, passwordValue)
+        timing.time(STORAGE, () -> storage.getUser(loginValue))
         .compose(optionalUser ->
-                        optionalUser.map(Future::succeededFuture).orElseGet(() -> Future.failedFuture(new RuntimeException("User login or password incorrect"))))
-                .onSuccess(res -> {
-
+                        optionalUser.map(Future::succeededFuture).orElseGet(() -> timing.time(HASH, () -> passwordHasher.verifyUnknown(passwordValue))
+                                .compose(matches -> Future.failedFuture(new RuntimeException(INCORRECT_CREDENTIALS_MSG)))))
+                .compose(res -> timing.time(HASH, () -> passwordHasher.verify(passwordValue, res.getPassword()))
+                        .compose(matches -> {
+                            if (Boolean.FALSE.equals(matches)) {
+                                return Future.failedFuture(new RuntimeException(INCORRECT_CREDENTIALS_MSG));
+                            }
+                            if (!PasswordHasher.isHash(res.getPassword())) {
+                                upgradePassword(res.getId(), passwordValue);
+                            }
+                            return Future.succeededFuture(res);
+                        }))
+                .compose(res -> {
                     log.debug("Generating token for user with id: {}", res.getId());
-                    String token = provider.generateToken(
-                            new JsonObject().put("_id", res.getId()), new JWTOptions());
-
-                    response(routingContext, 200, "Token obtained successfully", new JsonObject().put("token", token).encode());
+                    return timing.time(SIGN, () -> tokenIssuer.issue(new JsonObject()
+                            .put("_id", res.getId())
+                            .put(TOKEN_ID, UUID.randomUUID().toString())));
                 })
+                .onSuccess(token -> response(routingContext, 200, "Token obtained successfully", new JsonObject().put("token", token).encode()))
                 .onFailure(error -> {
+                    if (isUnavailable(error)) {
+                        log.warn("Login rejected: {}", error.getMessage());
+                        routingContext.response().putHeader(AdmissionControl.RETRY_AFTER_HEADER, "1");
+                        response(routingContext, 503, SERVICE_BUSY_MSG);
+                        return;
+                    }
                     String message = "Error while logging: " + error.getMessage();
                     log.warn(message);
                     response(routingContext, 500, message);
                 });
     }
 
+    /**
+     * @return the message answered with 400 to a {@code /register} or {@code /login} body, or {@code null} when it
+     * holds both the login and the password
+     */
+    public static String validateCredentials(JsonObject user) {
+        if (user == null) {
+            return MISSING_JSON_BODY_MSG;
+        }
+        if (user.getString(PASSWORD) == null || user.getString(LOGIN) == null) {
+            return "User or password field not present in request JSON";
+        }
+        return null;
+    }
+
+    public void logout(RoutingContext routingContext) {
+        authenticate(routingContext, res -> {
+            if (res.succeeded()) {
+                User user = res.result();
+                Long exp = user.attributes().getLong(EXPIRES_AT, user.principal().getLong(EXPIRES_AT));
+                logout(routingContext, user.principal().getString(TOKEN_ID),
+                        exp == null ? TokenRevocations.NEVER_EXPIRES : TimeUnit.SECONDS.toMillis(exp));
+            } else {
+                String message = "Unauthenticated to preform action";
+                log.debug(message);
+                response(routingContext, 403, message);
+            }
+        });
+    }
+
+    private void logout(RoutingContext routingContext, String tokenId, long expiresAt) {
+        if (tokenId == null) {
+            String message = "Token id not present in token";
+            log.debug(message);
+            response(routingContext, 400, message);
+            return;
+        }
+
+        RequestTiming.of(routingContext).time(STORAGE, () -> tokenRevocations.revoke(tokenId, expiresAt))
+                .onSuccess(v -> {
+                    log.debug("Token with id: {} revoked", tokenId);
+                    response(routingContext, 200, "Logged out successfully");
+                })
+                .onFailure(error -> {
+                    if (isUnavailable(error)) {
+                        log.warn("Logout rejected: {}", error.getMessage());
+                        routingContext.response().putHeader(AdmissionControl.RETRY_AFTER_HEADER, "1");
+                        response(routingContext, 503, SERVICE_BUSY_MSG);
+                        return;
+                    }
+                    log.error("Token failed to revoke: {}", error.getMessage());
+                    response(routingContext, 500, "Logout failed");
+                });
+    }
+
+    private void upgradePassword(String userId, String passwordValue) {
+        passwordHasher.hash(passwordValue)
+                .compose(hash -> storage.updatePassword(userId, hash))
+                .onSuccess(v -> log.info("Password of user with id: {} migrated to a hash", userId))
+                .onFailure(error -> log.warn("Password of user with id: {} failed to migrate: {}", userId, error.getMessage()));
+    }
+
     public void saveItem(RoutingContext routingContext) {
-        jwtHandler.authenticate(routingContext, res -> {
+        authenticate(routingContext, res -> {
             if (res.succeeded()) {
                 String userId = res.result().principal().getString("_id");
                 log.debug("User with id: {} successfully authenticated", userId);
@@ -119,6 +278,8 @@ public class RestRouter extends AbstractVerticle {
     }
 
     private void saveItem(RoutingContext routingContext, String userId) {
+        RequestTiming timing = RequestTiming.of(routingContext);
+        timing.begin(VALIDATION);
         if (userId == null) {
             String message = "User Id not present in token";
             log.debug(message);
@@ -126,7 +287,21 @@ public class RestRouter extends AbstractVerticle {
             return;
         }
 
-        JsonObject title = routingContext.body().asJsonObject();
+        MediaFormat format = MediaFormat.fromContentType(routingContext.request().getHeader("Content-Type"));
+        if (format == null) {
+            log.debug(UNSUPPORTED_CONTENT_TYPE_MSG);
+            response(routingContext, 415, UNSUPPORTED_CONTENT_TYPE_MSG);
+            return;
+        }
+        JsonObject title;
+        try {
+            title = readBody(routingContext, format);
+        } catch (DecodeException e) {
+            String message = "Body is not a valid " + format.name() + " object";
+            log.debug(message);
+            response(routingContext, 400, message);
+            return;
+        }
         if (title == null) {
             String message = MISSING_JSON_BODY_MSG;
             log.debug(message);
@@ -146,19 +321,117 @@ public class RestRouter extends AbstractVerticle {
                 .put("title", titleValue)
                 .put("userId", userId);
 
-        mongoDao.saveTitle(titleToSave)
+        timing.end(VALIDATION);
+        timing.time(STORAGE, () -> storage.saveTitle(titleToSave))
                 .onSuccess(id -> {
                     log.info("Item: '{}' saved successfully with id: {}", titleValue, id);
+                    JsonObject item = new JsonObject().put("_id", id).put("title", titleValue);
+                    titleSearch.saved(userId, item);
+                    itemFeed.publish(userId, item);
                     response(routingContext, 204, "Item created successfully");
                 })
                 .onFailure(throwable -> {
+                    if (isUnavailable(throwable)) {
+                        log.warn("Item save rejected: {}", throwable.getMessage());
+                        routingContext.response().putHeader(AdmissionControl.RETRY_AFTER_HEADER, "1");
+                        response(routingContext, 503, SERVICE_BUSY_MSG);
+                        return;
+                    }
                     log.error("Item failed to save: {}", throwable.getMessage());
                     response(routingContext, 500, "Item failed to save");
                 });
     }
 
+    public void importItems(RoutingContext routingContext) {
+        routingContext.request().pause();
+        authenticate(routingContext, res -> {
+            if (res.succeeded()) {
+                String userId = res.result().principal().getString("_id");
+                log.debug("User with id: {} successfully authenticated", userId);
+                importItems(routingContext, userId);
+            } else {
+                String message = "Unauthenticated to preform action";
+                log.debug(message);
+                response(routingContext, 403, message);
+            }
+        });
+    }
+
+    private void importItems(RoutingContext routingContext, String userId) {
+        if (userId == null) {
+            String message = "User Id not present in token";
+            log.debug(message);
+            response(routingContext, 400, message);
+            return;
+        }
+
+        new ItemImport(storage, userId, IMPORT_BATCH_SIZE).run(routingContext.request())
+                .onSuccess(summary -> {
+                    log.info("Imported {} items for user with id: {}, {} failed",
+                            summary.getLong("inserted"), userId, summary.getLong("failed"));
+                    response(routingContext, 200, "Items imported", summary.encode());
+                })
+                .onFailure(throwable -> {
+                    log.error("Items failed to import: {}", throwable.getMessage());
+                    response(routingContext, 400, "Items failed to import: " + throwable.getMessage());
+                });
+    }
+
+    public void exportItems(RoutingContext routingContext) {
+        authenticate(routingContext, res -> {
+            if (res.succeeded()) {
+                String userId = res.result().principal().getString("_id");
+                log.debug("User with id: {} successfully authenticated", userId);
+                exportItems(routingContext, userId);
+            } else {
+                String message = "Unauthenticated to preform action";
+                log.debug(message);
+                response(routingContext, 403, message);
+            }
+        });
+    }
+
+    private void exportItems(RoutingContext routingContext, String userId) {
+        if (userId == null) {
+            String message = "User Id not present in token";
+            log.debug(message);
+            response(routingContext, 400, message);
+            return;
+        }
+
+        storage.getTitlesVersion(userId)
+                .onSuccess(version -> ndjsonResponse(routingContext, 200, "Items successfully exported", ITEMS_FAILED_MSG,
+                        storage.streamTitles(userId, version)))
+                .onFailure(throwable -> failGetTitles(routingContext, throwable));
+    }
+
+    public void streamItems(RoutingContext routingContext) {
+        authenticate(routingContext, res -> {
+            if (res.succeeded()) {
+                String userId = res.result().principal().getString("_id");
+                log.debug("User with id: {} successfully authenticated", userId);
+                streamItems(routingContext, userId);
+            } else {
+                String message = "Unauthenticated to preform action";
+                log.debug(message);
+                response(routingContext, 403, message);
+            }
+        });
+    }
+
+    private void streamItems(RoutingContext routingContext, String userId) {
+        if (userId == null) {
+            String message = "User Id not present in token";
+            log.debug(message);
+            response(routingContext, 400, message);
+            return;
+        }
+
+        itemFeed.subscribe(routingContext, userId);
+    }
+
     public void getTitles(RoutingContext routingContext) {
-        jwtHandler.authenticate(routingContext, res -> {
+        authenticate(routingContext, res -> {
             if (res.succeeded()) {
                 String userId = res.result().principal().getString("_id");
                 log.debug("User with id: {} successfully authenticated", userId);
@@ -172,6 +445,8 @@ public class RestRouter extends AbstractVerticle {
     }
 
     private void getTitles(RoutingContext routingContext, String userId) {
+        RequestTiming timing = RequestTiming.of(routingContext);
+        timing.begin(VALIDATION);
         if (userId == null) {
             String message = "User Id not present in token";
             log.debug(message);
@@ -179,11 +454,179 @@ public class RestRouter extends AbstractVerticle {
             return;
         }
 
-        mongoDao.getTitles(userId)
-                .onSuccess(res -> response(routingContext, 200, "Items successfully retrieved", res.toString()))
-                .onFailure(throwable -> {
-                    log.error("Items failed to get: {}", throwable.getMessage());
-                    response(routingContext, 500, "Items failed to get");
-                });
+        MediaFormat format = MediaFormat.fromAccept(routingContext.request().getHeader("Accept"));
+        routingContext.response().putHeader("Vary", "Accept");
+        String limitParam = routingContext.request().getParam(LIMIT);
+        String afterParam = routingContext.request().getParam(AFTER);
+        String queryParam = routingContext.request().getParam(QUERY);
+        boolean paged = limitParam != null || afterParam != null;
+
+        int limit;
+        String after;
+        try {
+            limit = limitParam == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(limitParam);
+            after = afterParam == null ? null : decodeCursor(afterParam);
+        } catch (IllegalArgumentException e) {
+            String message = "Invalid limit or cursor parameter";
+            log.debug(message);
+            response(routingContext, 400, message);
+            return;
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            String message = String.format("Limit must be between 1 and %d", MAX_PAGE_SIZE);
+            log.debug(message);
+            response(routingContext, 400, message);
+            return;
+        }
+
+        if (queryParam != null) {
+            if (afterParam != null) {
+                String message = "Search results cannot be paged with after, raise the limit instead";
+                log.debug(message);
+                response(routingContext, 400, message);
+                return;
+            }
+            searchTitles(routingContext, userId, queryParam, format, limit);
+            return;
+        }
+
+        timing.end(VALIDATION);
+        timing.time(STORAGE, () -> storage.getTitlesVersion(userId))
+                .onSuccess(version -> {
+                    String etag = entityTag(version, format, paged ? limit + (afterParam == null ? "" : "-" + afterParam) : null);
+                    routingContext.response()
+                            .putHeader(HttpHeaders.ETAG, etag)
+                            .putHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+                    if (isNotModified(routingContext.request().getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+                        log.debug("Items of user with id: {} not modified", userId);
+                        response(routingContext, 304, "Not Modified");
+                        return;
+                    }
+                    if (!paged) {
+                        response(routingContext, 200, "Items successfully retrieved", ITEMS_FAILED_MSG,
+                                storage.streamTitles(userId, version), format);
+                        return;
+                    }
+                    getTitlesPage(routingContext, userId, format, after, limit);
+                })
+                .onFailure(throwable -> failGetTitles(routingContext, throwable));
+    }
+
+    private void searchTitles(RoutingContext routingContext, String userId, String query, MediaFormat format, int limit) {
+        RequestTiming timing = RequestTiming.of(routingContext);
+        List<String> queryTokens = TitleSearch.tokenize(query);
+        if (queryTokens.isEmpty()) {
+            String message = "Query has no words to search for";
+            log.debug(message);
+            response(routingContext, 400, message);
+            return;
+        }
+
+        timing.end(VALIDATION);
+        timing.time(STORAGE, () -> titleSearch.search(userId, queryTokens, limit))
+                .onSuccess(res -> {
+                    timing.begin(SERIALIZATION);
+                    Buffer body = format.encode(res);
+                    timing.end(SERIALIZATION);
+                    response(routingContext, 200, "Items successfully retrieved", format, body);
+                })
+                .onFailure(throwable -> failGetTitles(routingContext, throwable));
+    }
+
+    private void getTitlesPage(RoutingContext routingContext, String userId, MediaFormat format, String after, int limit) {
+        RequestTiming timing = RequestTiming.of(routingContext);
+        timing.time(STORAGE, () -> storage.getTitles(userId, after, limit + 1))
+                .onSuccess(res -> {
+                    List<JsonObject> page = res.size() > limit ? res.subList(0, limit) : res;
+                    if (res.size() > limit) {
+                        String lastId = page.get(page.size() - 1).getString("_id");
+                        routingContext.response().putHeader(NEXT_CURSOR_HEADER, encodeCursor(lastId));
+                    }
+                    timing.begin(SERIALIZATION);
+                    Buffer body = format.encode(page);
+                    timing.end(SERIALIZATION);
+                    response(routingContext, 200, "Items successfully retrieved", format, body);
+                })
+                .onFailure(throwable -> failGetTitles(routingContext, throwable));
+    }
+
+    private static void failGetTitles(RoutingContext routingContext, Throwable throwable) {
+        if (isUnavailable(throwable)) {
+            log.warn("Items get rejected: {}", throwable.getMessage());
+            routingContext.response().putHeader(AdmissionControl.RETRY_AFTER_HEADER, "1");
+            response(routingContext, 503, SERVICE_BUSY_MSG);
+            return;
+        }
+        log.error("Items failed to get: {}", throwable.getMessage());
+        response(routingContext, 500, ITEMS_FAILED_MSG);
+    }
+
+    /**
+     * Weak entity tag of the titles of a user, as the same titles may be sent compressed or not. It changes with
+     * the titles version, the media format and the page, if any.
+     */
+    private static String entityTag(long version, MediaFormat format, String page) {
+        String tag = Long.toString(version, Character.MAX_RADIX) + "-" + format.name().toLowerCase();
+        return "W/\"" + (page == null ? tag : tag + "-" + page) + "\"";
+    }
+
+    /**
+     * @return whether one of the tags in the {@code If-None-Match} header weakly matches the entity tag
+     */
+    private static boolean isNotModified(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaqueTag = etag.substring(2);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(opaqueTag) || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the error comes from a full queue, an open storage circuit or a storage deadline, i.e. the
+     * request may succeed when retried later
+     */
+    private static boolean isUnavailable(Throwable error) {
+        return error instanceof RejectedExecutionException || error instanceof TimeoutException;
+    }
+
+    private static JsonObject readBody(RoutingContext routingContext, MediaFormat format) {
+        if (format == MediaFormat.JSON) {
+            return routingContext.body().asJsonObject();
+        }
+        Buffer body = routingContext.body().buffer();
+        return body == null || body.length() == 0 ? null : format.decode(body);
+    }
+
+    private static String encodeCursor(String id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    }
+
+    private void authenticate(RoutingContext routingContext, Handler<AsyncResult<User>> handler) {
+        RequestTiming timing = RequestTiming.of(routingContext);
+        long start = System.nanoTime();
+        timing.begin(AUTH);
+        jwtHandler.authenticate(routingContext, res -> {
+            timing.end(AUTH);
+            metrics.jwtVerify().record(start, res.succeeded());
+            if (res.succeeded() && tokenRevocations.isRevoked(res.result().principal().getString(TOKEN_ID))) {
+                log.debug("Revoked token presented");
+                handler.handle(Future.failedFuture("Token revoked"));
+                return;
+            }
+            if (res.succeeded() && !admissionControl.admitUser(routingContext, res.result().principal().getString("_id"))) {
+                return;
+            }
+            handler.handle(res);
+        });
     }
 }
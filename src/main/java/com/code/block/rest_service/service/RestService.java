@@ -1,34 +1,98 @@
 package com.code.block.rest_service.service;
 
+import com.code.block.rest_service.metrics.Metrics;
+import com.code.block.rest_service.metrics.RequestTiming;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Promise;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.AllowForwardHeaders;
+import io.vertx.ext.web.Route;
 import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.BodyHandler;
 import lombok.extern.slf4j.Slf4j;
 
+import static com.code.block.rest_service.metrics.RequestTiming.Phase.BODY;
+
 @Slf4j
 public class RestService extends AbstractVerticle {
   public static final int HTTP_SERVER_PORT = 8888;
+  public static final long DEFAULT_CREDENTIALS_BODY_LIMIT = 1_024;
+  public static final long DEFAULT_ITEM_BODY_LIMIT = 16_384;
 
   private final RestRouter restRouter;
+  private final HttpServerOptions serverOptions;
+  private final int compressionMinBytes;
+  private final long credentialsBodyLimit;
+  private final long itemBodyLimit;
+  private final AllowForwardHeaders allowForward;
 
   public RestService(RestRouter restRouter) {
+    this(restRouter, new HttpServerOptions(), 0);
+  }
+
+  public RestService(RestRouter restRouter, HttpServerOptions serverOptions, int compressionMinBytes) {
+    this(restRouter, serverOptions, compressionMinBytes, DEFAULT_CREDENTIALS_BODY_LIMIT, DEFAULT_ITEM_BODY_LIMIT);
+  }
+
+  public RestService(RestRouter restRouter, HttpServerOptions serverOptions, int compressionMinBytes,
+                     long credentialsBodyLimit, long itemBodyLimit) {
+    this(restRouter, serverOptions, compressionMinBytes, credentialsBodyLimit, itemBodyLimit, AllowForwardHeaders.NONE);
+  }
+
+  /**
+   * @param serverOptions        options of the HTTP server, e.g. compression and HTTP/2 settings
+   * @param compressionMinBytes  responses with a smaller {@code Content-Length} are sent uncompressed, as compressing
+   *                             them costs more CPU than the bytes it saves
+   * @param credentialsBodyLimit largest body accepted by {@code /register} and {@code /login}
+   * @param itemBodyLimit        largest body accepted by {@code POST /items}
+   * @param allowForward         forwarding headers trusted for the client address, which the per-address rate limit
+   *                             keys on; only to be set behind a proxy that overwrites these headers
+   */
+  public RestService(RestRouter restRouter, HttpServerOptions serverOptions, int compressionMinBytes,
+                     long credentialsBodyLimit, long itemBodyLimit, AllowForwardHeaders allowForward) {
     this.restRouter = restRouter;
+    this.serverOptions = serverOptions;
+    this.compressionMinBytes = compressionMinBytes;
+    this.credentialsBodyLimit = credentialsBodyLimit;
+    this.itemBodyLimit = itemBodyLimit;
+    this.allowForward = allowForward;
   }
 
   @Override
   public void start(Promise<Void> startPromise) {
-    Router router = Router.router(vertx);
-    router.route().handler(BodyHandler.create());
-    router.post("/items").handler(restRouter::saveItem);
+    Metrics metrics = restRouter.getMetrics();
+    AdmissionControl admissionControl = restRouter.getAdmissionControl();
+    HealthCheck healthCheck = restRouter.getHealthCheck();
+    Router router = Router.router(vertx).allowForward(allowForward);
+    // item streams stay open, so they are neither timed nor counted in flight, and are capped by the feed instead
+    router.get("/items/stream").handler(restRouter::streamItems);
+    router.route().handler(metrics::track);
+    if (serverOptions.isCompressionSupported() && compressionMinBytes > 0) {
+      router.route().handler(this::skipCompressionOfSmallResponses);
+    }
+    router.get("/metrics").handler(metrics::scrape);
+    router.get("/health/live").handler(healthCheck::live);
+    router.get("/health/ready").handler(healthCheck::ready);
+    router.route().handler(admissionControl::limitInFlight);
+    // streaming routes consume the request themselves, the others buffer at most their own body limit
+    router.post("/items/import").handler(restRouter::importItems);
+    router.get("/items/export").handler(restRouter::exportItems);
+    postWithBody(router, "/items", itemBodyLimit).handler(restRouter::saveItem);
     router.get("/items").handler(restRouter::getTitles);
-    router.post("/register").handler(restRouter::register);
-    router.post("/login").handler(restRouter::login);
+    router.post("/register").handler(admissionControl::limitByAddress);
+    router.post("/login").handler(admissionControl::limitByAddress);
+    router.post("/logout").handler(restRouter::logout);
+    postWithBody(router, "/register", credentialsBodyLimit).handler(restRouter::register);
+    postWithBody(router, "/login", credentialsBodyLimit).handler(restRouter::login);
 
-    vertx.createHttpServer()
+    vertx.createHttpServer(serverOptions)
       .requestHandler(router)
       .listen(HTTP_SERVER_PORT)
       .onSuccess(server -> {
+          metrics.monitorEventLoop(vertx);
           log.info("Server is running on port: {}", HTTP_SERVER_PORT);
           startPromise.complete();
         }
@@ -39,4 +103,33 @@ public class RestService extends AbstractVerticle {
       });
   }
 
+  /**
+   * @return a {@code POST} route that buffers the request body first. A {@code Content-Length} above the limit is
+   * answered with 413 before anything is read, and so is a body that grows past the limit while it is streamed in.
+   */
+  private static Route postWithBody(Router router, String path, long limit) {
+    // the body handler has to be the first handler of its route, so the timing starts on a route of its own
+    router.post(path).handler(routingContext -> {
+      RequestTiming.of(routingContext).begin(BODY);
+      routingContext.next();
+    });
+    return router.post(path)
+      .handler(BodyHandler.create(false).setBodyLimit(limit))
+      .handler(routingContext -> {
+        RequestTiming.of(routingContext).end(BODY);
+        routingContext.next();
+      });
+  }
+
+  private void skipCompressionOfSmallResponses(RoutingContext routingContext) {
+    HttpServerResponse response = routingContext.response();
+    routingContext.addHeadersEndHandler(v -> {
+      String length = response.headers().get(HttpHeaders.CONTENT_LENGTH);
+      if (length != null && Long.parseLong(length) < compressionMinBytes) {
+        response.putHeader(HttpHeaders.CONTENT_ENCODING, HttpHeaders.IDENTITY);
+      }
+    });
+    routingContext.next();
+  }
+
 }
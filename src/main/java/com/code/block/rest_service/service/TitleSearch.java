@@ -0,0 +1,261 @@
+package com.code.block.rest_service.service;
+
+import com.code.block.rest_service.repository.Storage;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Prefix search over the titles of a user, answered from an in-memory index instead of a scan of the titles
+ * collection. Titles are split into lower-case words without diacritics; a query matches the titles that contain,
+ * for every query word, a word starting with it. Titles matching a word exactly rank above prefix matches, newer
+ * titles above older ones.
+ * <p>
+ * The index of a user is built from the storage on first search and kept up to date with {@link #saved} for titles
+ * saved through this instance. Titles saved elsewhere are noticed through the titles version, which is checked at
+ * most every {@code revalidateMs}; a changed version rebuilds the index. Once the indexes hold more than
+ * {@code maxTitles} titles, the users searched least recently are dropped. Safe to share between verticle instances.
+ */
+@Slf4j
+public class TitleSearch {
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int EXACT_SCORE = 2;
+    private static final int PREFIX_SCORE = 1;
+
+    private final Storage storage;
+    private final long maxTitles;
+    private final long revalidateNanos;
+    private final Map<String, UserIndex> indexes = new ConcurrentHashMap<>();
+    private final AtomicLong indexedTitles = new AtomicLong();
+
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public TitleSearch(Storage storage, long maxTitles, long revalidateMs) {
+        this.storage = storage;
+        this.maxTitles = maxTitles;
+        this.revalidateNanos = TimeUnit.MILLISECONDS.toNanos(revalidateMs);
+    }
+
+    /**
+     * @return the lower-case words of the text without diacritics, in order of appearance
+     */
+    public static List<String> tokenize(String text) {
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFKD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        List<String> tokens = new ArrayList<>();
+        for (String token : SEPARATORS.split(normalized)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * @param queryTokens words of the query as returned by {@link #tokenize}, at least one
+     * @return up to {@code limit} titles of the user, best matches first
+     */
+    public Future<List<JsonObject>> search(String userId, List<String> queryTokens, int limit) {
+        searches.incrementAndGet();
+        long now = System.nanoTime();
+        UserIndex index = indexes.get(userId);
+        if (index != null && now - index.checkedAt < revalidateNanos) {
+            return Future.succeededFuture(index.search(queryTokens, limit, now));
+        }
+        return storage.getTitlesVersion(userId).compose(version -> {
+            if (index != null && index.isAt(version, now)) {
+                return Future.succeededFuture(index.search(queryTokens, limit, now));
+            }
+            return storage.getTitles(userId, version).map(titles -> {
+                UserIndex built = rebuild(userId, version, titles, now);
+                return built.search(queryTokens, limit, now);
+            });
+        });
+    }
+
+    /**
+     * Adds a title saved through this instance to the index of its user, if the user has one.
+     */
+    public void saved(String userId, JsonObject title) {
+        UserIndex index = indexes.get(userId);
+        if (index != null && index.add(title)) {
+            indexedTitles.incrementAndGet();
+            evictIfNeeded(userId);
+        }
+    }
+
+    /**
+     * @return indexed users and titles, searches, index rebuilds and users evicted to stay within the budget
+     */
+    public JsonObject stats() {
+        return new JsonObject()
+                .put("users", indexes.size())
+                .put("titles", indexedTitles.get())
+                .put("searches", searches.get())
+                .put("rebuilds", rebuilds.get())
+                .put("evictions", evictions.get());
+    }
+
+    private UserIndex rebuild(String userId, long version, List<JsonObject> titles, long now) {
+        rebuilds.incrementAndGet();
+        UserIndex built = new UserIndex(version, now);
+        titles.forEach(built::insert);
+        UserIndex replaced = indexes.put(userId, built);
+        indexedTitles.addAndGet(built.size() - (replaced == null ? 0 : replaced.size()));
+        log.debug("Search index of user with id: {} rebuilt with {} titles", userId, built.size());
+        evictIfNeeded(userId);
+        return built;
+    }
+
+    /**
+     * Drops the indexes of the users searched least recently until the budget is met, never the one of {@code keep},
+     * which was just built or grown.
+     */
+    private void evictIfNeeded(String keep) {
+        while (indexedTitles.get() > maxTitles && indexes.size() > 1) {
+            String oldest = null;
+            long oldestAccess = Long.MAX_VALUE;
+            for (Map.Entry<String, UserIndex> entry : indexes.entrySet()) {
+                if (!entry.getKey().equals(keep) && entry.getValue().lastAccess < oldestAccess) {
+                    oldest = entry.getKey();
+                    oldestAccess = entry.getValue().lastAccess;
+                }
+            }
+            UserIndex evicted = oldest == null ? null : indexes.remove(oldest);
+            if (evicted == null) {
+                return;
+            }
+            indexedTitles.addAndGet(-evicted.size());
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Titles of one user in insertion order and a sorted map from each word to the positions of the titles that
+     * contain it, so all words starting with a prefix form one contiguous range.
+     */
+    private static class UserIndex {
+        private final List<JsonObject> titles = new ArrayList<>();
+        private final Set<String> ids = new HashSet<>();
+        private final NavigableMap<String, Postings> words = new TreeMap<>();
+        private long version;
+        private volatile long checkedAt;
+        private volatile long lastAccess;
+
+        private UserIndex(long version, long now) {
+            this.version = version;
+            this.checkedAt = now;
+            this.lastAccess = now;
+        }
+
+        /**
+         * @return whether the index is at the version, which then counts as checked now
+         */
+        private synchronized boolean isAt(long version, long now) {
+            if (this.version != version) {
+                return false;
+            }
+            checkedAt = now;
+            return true;
+        }
+
+        private synchronized int size() {
+            return titles.size();
+        }
+
+        /**
+         * Every save raises the titles version by one, so a saved title moves the index to the next version.
+         *
+         * @return whether the title was not indexed yet
+         */
+        private synchronized boolean add(JsonObject title) {
+            if (!insert(title)) {
+                return false;
+            }
+            version++;
+            return true;
+        }
+
+        private synchronized boolean insert(JsonObject title) {
+            String id = title.getString("_id");
+            if (id != null && !ids.add(id)) {
+                return false;
+            }
+            int position = titles.size();
+            titles.add(title);
+            for (String word : new HashSet<>(tokenize(title.getString("title", "")))) {
+                words.computeIfAbsent(word, w -> new Postings()).add(position);
+            }
+            return true;
+        }
+
+        private synchronized List<JsonObject> search(List<String> queryTokens, int limit, long now) {
+            lastAccess = now;
+            Map<Integer, Integer> scores = null;
+            for (String token : queryTokens) {
+                Map<Integer, Integer> tokenScores = new HashMap<>();
+                for (Map.Entry<String, Postings> entry : words.subMap(token, true, token + Character.MAX_VALUE, true).entrySet()) {
+                    int score = entry.getKey().length() == token.length() ? EXACT_SCORE : PREFIX_SCORE;
+                    Postings postings = entry.getValue();
+                    for (int i = 0; i < postings.size; i++) {
+                        if (scores == null || scores.containsKey(postings.positions[i])) {
+                            tokenScores.merge(postings.positions[i], score, Math::max);
+                        }
+                    }
+                }
+                if (scores != null) {
+                    Map<Integer, Integer> previous = scores;
+                    tokenScores.replaceAll((position, score) -> score + previous.get(position));
+                }
+                scores = tokenScores;
+                if (scores.isEmpty()) {
+                    return Collections.emptyList();
+                }
+            }
+            List<Map.Entry<Integer, Integer>> ranked = new ArrayList<>(scores.entrySet());
+            ranked.sort((first, second) -> first.getValue().equals(second.getValue())
+                    ? Integer.compare(second.getKey(), first.getKey())
+                    : Integer.compare(second.getValue(), first.getValue()));
+            List<JsonObject> result = new ArrayList<>(Math.min(limit, ranked.size()));
+            for (int i = 0; i < ranked.size() && i < limit; i++) {
+                result.add(titles.get(ranked.get(i).getKey()));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Growable array of title positions, in ascending order.
+     */
+    private static class Postings {
+        private int[] positions = new int[2];
+        private int size;
+
+        private void add(int position) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+        }
+    }
+}
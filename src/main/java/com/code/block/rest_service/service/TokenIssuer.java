@@ -0,0 +1,79 @@
+package com.code.block.rest_service.service;
+
+import com.code.block.rest_service.metrics.OperationTimer;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.JWTOptions;
+import io.vertx.ext.auth.jwt.JWTAuth;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Signs tokens on a dedicated worker pool, so expensive signatures never block an event loop.
+ * At most {@code maxPending} signatures are queued or running; further requests fail fast with a
+ * {@link RejectedExecutionException}. Safe to share between verticle instances.
+ */
+public class TokenIssuer {
+    private final JWTAuth provider;
+    private final JWTOptions jwtOptions;
+    private final WorkerExecutor executor;
+    private final int maxPending;
+    private final OperationTimer signTimer;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong issued = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong signNanos = new AtomicLong();
+
+    public TokenIssuer(Vertx vertx, JWTAuth provider, JWTOptions jwtOptions, int poolSize, int maxPending) {
+        this(vertx, provider, jwtOptions, poolSize, maxPending, new OperationTimer());
+    }
+
+    /**
+     * @param signTimer records the time of every signature, without the time spent queued
+     */
+    public TokenIssuer(Vertx vertx, JWTAuth provider, JWTOptions jwtOptions, int poolSize, int maxPending,
+                       OperationTimer signTimer) {
+        this.provider = provider;
+        this.jwtOptions = jwtOptions;
+        this.executor = vertx.createSharedWorkerExecutor("jwt-signing", poolSize);
+        this.maxPending = maxPending;
+        this.signTimer = signTimer;
+    }
+
+    public Future<String> issue(JsonObject claims) {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            rejected.incrementAndGet();
+            return Future.failedFuture(new RejectedExecutionException("Token signing queue is full"));
+        }
+        return executor.<String>executeBlocking(promise -> {
+            long start = System.nanoTime();
+            String token;
+            try {
+                token = provider.generateToken(claims, jwtOptions);
+            } catch (RuntimeException e) {
+                signTimer.record(start, false);
+                throw e;
+            }
+            signTimer.record(start, true);
+            signNanos.addAndGet(System.nanoTime() - start);
+            issued.incrementAndGet();
+            promise.complete(token);
+        }, false).onComplete(res -> pending.decrementAndGet());
+    }
+
+    public JsonObject stats() {
+        long issuedCount = issued.get();
+        return new JsonObject()
+                .put("algorithm", jwtOptions.getAlgorithm())
+                .put("pending", pending.get())
+                .put("issued", issuedCount)
+                .put("rejected", rejected.get())
+                .put("averageSignNanos", issuedCount == 0 ? 0 : signNanos.get() / issuedCount);
+    }
+}
@@ -0,0 +1,154 @@
+package com.code.block.rest_service.service;
+
+import com.code.block.rest_service.repository.Storage;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ids ({@code jti}) of revoked tokens, checked on every authenticated request without a database call. A
+ * {@link BloomFilter} answers the common case, a token that was never revoked, in a few nanoseconds; only its
+ * positives are confirmed against the exact set. Revocations are persisted in the storage, loaded again by
+ * {@link #load()} on startup, and published on the event bus address {@value REVOKED_ADDRESS}, so every instance
+ * and, in a clustered Vert.x, every node learns about them.
+ * <p>
+ * A revocation is kept only until its token expires, as an expired token is rejected anyway. {@link #prune()} drops
+ * the expired ones and rebuilds the filter from the rest, so neither grows with every logout ever made.
+ * Safe to share between verticle instances.
+ */
+@Slf4j
+public class TokenRevocations {
+    public static final String REVOKED_ADDRESS = "rest.tokens.revoked";
+    /**
+     * Expiry of a token without an {@code exp} claim, whose revocation is kept for good.
+     */
+    public static final long NEVER_EXPIRES = Long.MAX_VALUE;
+
+    private static final String TOKEN_ID = "jti";
+    private static final String EXPIRES_AT = "expiresAt";
+
+    private final Vertx vertx;
+    private final Storage storage;
+    private final int expectedTokens;
+    private final double falsePositiveRate;
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+    private volatile BloomFilter filter;
+
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder filterPositives = new LongAdder();
+    private final LongAdder pruned = new LongAdder();
+
+    /**
+     * @param vertx             event bus to share revocations over and timer to prune them with, or {@code null} to
+     *                          keep them to this instance and prune only on {@link #prune()} calls
+     * @param expectedTokens    unexpired revocations the filter is sized for; more raise its false positive rate,
+     *                          which costs exact set lookups but never a wrong answer
+     * @param falsePositiveRate share of tokens that were never revoked yet need an exact set lookup
+     * @param pruneIntervalMs   time between drops of expired revocations, {@code 0} to not schedule them
+     */
+    public TokenRevocations(Vertx vertx, Storage storage, int expectedTokens, double falsePositiveRate,
+                            long pruneIntervalMs) {
+        this.vertx = vertx;
+        this.storage = storage;
+        this.expectedTokens = expectedTokens;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filter = new BloomFilter(expectedTokens, falsePositiveRate);
+        if (vertx != null) {
+            vertx.eventBus().<JsonObject>consumer(REVOKED_ADDRESS,
+                    message -> add(message.body().getString(TOKEN_ID), message.body().getLong(EXPIRES_AT)));
+            if (pruneIntervalMs > 0) {
+                vertx.setPeriodic(pruneIntervalMs, id -> prune());
+            }
+        }
+    }
+
+    /**
+     * Restores the unexpired revocations persisted before the start.
+     */
+    public Future<Void> load() {
+        return storage.getRevokedTokens()
+                .onSuccess(tokens -> {
+                    tokens.forEach(this::add);
+                    log.info("Loaded {} revoked tokens", revoked.size());
+                })
+                .mapEmpty();
+    }
+
+    /**
+     * Persists the revocation, then applies it here and publishes it to the other instances and nodes.
+     *
+     * @param expiresAt time the token expires at in epoch milliseconds, or {@link #NEVER_EXPIRES}
+     */
+    public Future<Void> revoke(String tokenId, long expiresAt) {
+        return storage.saveRevokedToken(tokenId, expiresAt)
+                .onSuccess(v -> {
+                    add(tokenId, expiresAt);
+                    if (vertx != null) {
+                        vertx.eventBus().publish(REVOKED_ADDRESS,
+                                new JsonObject().put(TOKEN_ID, tokenId).put(EXPIRES_AT, expiresAt));
+                    }
+                });
+    }
+
+    public boolean isRevoked(String tokenId) {
+        if (tokenId == null) {
+            return false;
+        }
+        checks.increment();
+        if (!filter.mightContain(tokenId)) {
+            return false;
+        }
+        filterPositives.increment();
+        return revoked.containsKey(tokenId);
+    }
+
+    /**
+     * Drops the revocations of expired tokens and, if there were any, swaps in a filter holding only the rest, as
+     * items cannot be removed from a Bloom filter.
+     *
+     * @return the revocations dropped
+     */
+    public synchronized int prune() {
+        long now = System.currentTimeMillis();
+        int before = revoked.size();
+        revoked.values().removeIf(expiresAt -> expiresAt <= now);
+        int removed = before - revoked.size();
+        if (removed > 0) {
+            BloomFilter rebuilt = new BloomFilter(expectedTokens, falsePositiveRate);
+            revoked.keySet().forEach(rebuilt::add);
+            filter = rebuilt;
+            pruned.add(removed);
+            log.debug("Pruned {} expired revocations, {} left", removed, revoked.size());
+        }
+        return removed;
+    }
+
+    /**
+     * @return unexpired revoked tokens, checks, the checks the filter could not answer, which include the revoked
+     * tokens presented again and the false positives, and the revocations pruned after their tokens expired
+     */
+    public JsonObject stats() {
+        return new JsonObject()
+                .put("revoked", revoked.size())
+                .put("checks", checks.sum())
+                .put("filterPositives", filterPositives.sum())
+                .put("pruned", pruned.sum());
+    }
+
+    /**
+     * Synchronized with {@link #prune()}, so a revocation added while the filter is rebuilt is never left out of it.
+     */
+    private synchronized void add(String tokenId, long expiresAt) {
+        if (expiresAt <= System.currentTimeMillis()) {
+            return;
+        }
+        if (revoked.put(tokenId, expiresAt) == null) {
+            filter.add(tokenId);
+        }
+    }
+}
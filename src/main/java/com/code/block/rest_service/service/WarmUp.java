@@ -0,0 +1,108 @@
+package com.code.block.rest_service.service;
+
+import com.code.block.rest_service.repository.Storage;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.authentication.TokenCredentials;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Brings a freshly deployed instance up to speed before it is reported ready:
+ * <ol>
+ *   <li>runs {@code connections} storage queries at once, so the connection pool opens that many connections;</li>
+ *   <li>signs and verifies {@code iterations} tokens and hashes and verifies one password, so the crypto providers
+ *   are loaded and their hot paths compiled;</li>
+ *   <li>sends {@code iterations} requests per read-only route to the local server, so routing, authentication,
+ *   serialization and compression are compiled too.</li>
+ * </ol>
+ * Every step only reads; the synthetic user {@value WARM_UP_USER_ID} owns no items. A failing step is logged and the
+ * next one runs anyway, as the readiness checks decide whether the instance can take traffic.
+ */
+@Slf4j
+public class WarmUp {
+    public static final String WARM_UP_USER_ID = "warm-up";
+
+    private final Vertx vertx;
+    private final TokenIssuer tokenIssuer;
+    private final JWTAuth jwtProvider;
+    private final PasswordHasher passwordHasher;
+    private final Storage storage;
+    private final int connections;
+    private final int iterations;
+
+    public WarmUp(Vertx vertx, TokenIssuer tokenIssuer, JWTAuth jwtProvider, PasswordHasher passwordHasher,
+                  Storage storage, int connections, int iterations) {
+        this.vertx = vertx;
+        this.tokenIssuer = tokenIssuer;
+        this.jwtProvider = jwtProvider;
+        this.passwordHasher = passwordHasher;
+        this.storage = storage;
+        this.connections = connections;
+        this.iterations = iterations;
+    }
+
+    public Future<Void> run() {
+        long start = System.currentTimeMillis();
+        return step("storage", this::openConnections)
+                .compose(v -> step("crypto", this::exerciseCrypto))
+                .compose(v -> step("http", this::exerciseRoutes))
+                .onComplete(res -> log.info("Warm-up took {} ms", System.currentTimeMillis() - start));
+    }
+
+    private Future<Void> openConnections() {
+        List<Future<Long>> queries = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            queries.add(storage.getTitlesVersion(WARM_UP_USER_ID));
+        }
+        return CompositeFuture.all(new ArrayList<>(queries)).mapEmpty();
+    }
+
+    private Future<Void> exerciseCrypto() {
+        return repeat(() -> tokenIssuer.issue(new JsonObject().put("_id", WARM_UP_USER_ID))
+                        .compose(token -> jwtProvider.authenticate(new TokenCredentials(token))))
+                .compose(v -> passwordHasher.hash(WARM_UP_USER_ID))
+                .compose(hash -> passwordHasher.verify(WARM_UP_USER_ID, hash))
+                .mapEmpty();
+    }
+
+    private Future<Void> exerciseRoutes() {
+        HttpClient client = vertx.createHttpClient();
+        return tokenIssuer.issue(new JsonObject().put("_id", WARM_UP_USER_ID))
+                .compose(token -> repeat(() -> client.request(HttpMethod.GET, RestService.HTTP_SERVER_PORT, "localhost", "/items")
+                        .compose(req -> req.putHeader("Authorization", "Bearer " + token).send())
+                        .compose(HttpClientResponse::body)))
+                .compose(v -> repeat(() -> client.request(HttpMethod.GET, RestService.HTTP_SERVER_PORT, "localhost", "/health/live")
+                        .compose(req -> req.send())
+                        .compose(HttpClientResponse::body)))
+                .onComplete(res -> client.close());
+    }
+
+    /**
+     * Runs the operation {@code iterations} times, one after the other.
+     */
+    private Future<Void> repeat(Supplier<Future<?>> operation) {
+        Future<Void> chain = Future.succeededFuture();
+        for (int i = 0; i < iterations; i++) {
+            chain = chain.compose(v -> operation.get().mapEmpty());
+        }
+        return chain;
+    }
+
+    private static Future<Void> step(String name, Supplier<Future<Void>> operation) {
+        return operation.get()
+                .recover(error -> {
+                    log.warn("Warm-up step {} failed: {}", name, error.getMessage());
+                    return Future.succeededFuture();
+                });
+    }
+}
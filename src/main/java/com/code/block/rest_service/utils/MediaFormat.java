@@ -0,0 +1,284 @@
+package com.code.block.rest_service.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.EncodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Encodings of items that {@code /items} reads and writes. JSON is the default; CBOR and Smile are binary encodings
+ * of the same document model that are smaller and cheaper to produce for long item lists. Arrays are written with an
+ * open end, so items can be encoded one at a time while a response is streamed.
+ */
+public enum MediaFormat {
+  JSON("application/json", null),
+  CBOR("application/cbor", new CBORFactory()),
+  SMILE("application/x-jackson-smile", new SmileFactory()
+    .disable(SmileGenerator.Feature.CHECK_SHARED_NAMES)
+    .disable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES));
+
+  private static final MediaFormat[] FORMATS = values();
+
+  private final String contentType;
+  private final JsonFactory factory;
+  private final JsonFactory itemFactory;
+  private final Buffer arrayStart;
+  private final Buffer separator;
+  private final Buffer arrayEnd;
+
+  MediaFormat(String contentType, JsonFactory factory) {
+    this.contentType = contentType;
+    this.factory = factory;
+    if (factory == null) {
+      this.itemFactory = null;
+      this.arrayStart = Buffer.buffer("[");
+      this.separator = Buffer.buffer(",");
+      this.arrayEnd = Buffer.buffer("]");
+      return;
+    }
+    // items follow the header written with the array start, and do not refer to names of earlier items
+    this.itemFactory = factory instanceof SmileFactory
+      ? ((SmileFactory) factory).copy().disable(SmileGenerator.Feature.WRITE_HEADER)
+      : factory;
+    byte[] start = generate(factory, JsonGenerator::writeStartArray);
+    byte[] empty = generate(factory, generator -> {
+      generator.writeStartArray();
+      generator.writeEndArray();
+    });
+    this.arrayStart = Buffer.buffer(start);
+    this.separator = Buffer.buffer();
+    this.arrayEnd = Buffer.buffer(Arrays.copyOfRange(empty, start.length, empty.length));
+  }
+
+  public String getContentType() {
+    return contentType;
+  }
+
+  /**
+   * Picks the supported format the {@code Accept} header prefers, by quality value and then by the more specific
+   * type. Without a header, or when it names no supported type, the response is JSON.
+   */
+  public static MediaFormat fromAccept(String accept) {
+    if (accept == null) {
+      return JSON;
+    }
+    MediaFormat best = JSON;
+    double bestQuality = 0;
+    boolean bestIsWildcard = true;
+    for (String range : accept.split(",")) {
+      String[] parts = range.split(";");
+      MediaFormat format = byType(parts[0]);
+      if (format == null) {
+        continue;
+      }
+      double quality = quality(parts);
+      boolean wildcard = parts[0].contains("*");
+      if (quality > bestQuality || quality == bestQuality && quality > 0 && bestIsWildcard && !wildcard) {
+        best = format;
+        bestQuality = quality;
+        bestIsWildcard = wildcard;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * @return the format of a request body, JSON when no content type is given, or {@code null} when unsupported
+   */
+  public static MediaFormat fromContentType(String contentType) {
+    if (contentType == null) {
+      return JSON;
+    }
+    return byType(contentType.split(";")[0]);
+  }
+
+  public Buffer arrayStart() {
+    return arrayStart;
+  }
+
+  /**
+   * @return the bytes between two items of an array, empty for the binary formats
+   */
+  public Buffer separator() {
+    return separator;
+  }
+
+  public Buffer arrayEnd() {
+    return arrayEnd;
+  }
+
+  /**
+   * Encodes a single item that is placed between {@link #arrayStart()} and {@link #arrayEnd()}.
+   */
+  public Buffer encodeItem(JsonObject item) {
+    if (factory == null) {
+      return item.toBuffer();
+    }
+    return Buffer.buffer(generate(itemFactory, generator -> write(generator, item.getMap())));
+  }
+
+  public Buffer encode(List<JsonObject> items) {
+    if (factory == null) {
+      return new JsonArray(items).toBuffer();
+    }
+    return Buffer.buffer(generate(factory, generator -> write(generator, items)));
+  }
+
+  /**
+   * @throws DecodeException when the body is not a single object in this format
+   */
+  public JsonObject decode(Buffer body) {
+    if (factory == null) {
+      return body.toJsonObject();
+    }
+    try (JsonParser parser = factory.createParser(body.getBytes())) {
+      Object value = read(parser, parser.nextToken());
+      if (!(value instanceof JsonObject) || parser.nextToken() != null) {
+        throw new DecodeException("Body is not a single " + name() + " object");
+      }
+      return (JsonObject) value;
+    } catch (IOException e) {
+      throw new DecodeException("Failed to decode " + name() + ": " + e.getMessage());
+    }
+  }
+
+  private static MediaFormat byType(String type) {
+    String trimmed = type.trim().toLowerCase(Locale.ROOT);
+    for (MediaFormat format : FORMATS) {
+      if (format.contentType.equals(trimmed)) {
+        return format;
+      }
+    }
+    return "*/*".equals(trimmed) || "application/*".equals(trimmed) ? JSON : null;
+  }
+
+  private static double quality(String[] parameters) {
+    for (int i = 1; i < parameters.length; i++) {
+      String parameter = parameters[i].trim();
+      if (parameter.startsWith("q=")) {
+        try {
+          return Double.parseDouble(parameter.substring(2));
+        } catch (NumberFormatException e) {
+          return 0;
+        }
+      }
+    }
+    return 1;
+  }
+
+  private static byte[] generate(JsonFactory factory, GeneratorWriter writer) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+    try (JsonGenerator generator = factory.createGenerator(out)) {
+      generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+      writer.write(generator);
+    } catch (IOException e) {
+      throw new EncodeException("Failed to encode: " + e.getMessage());
+    }
+    return out.toByteArray();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void write(JsonGenerator generator, Object value) throws IOException {
+    if (value == null) {
+      generator.writeNull();
+    } else if (value instanceof JsonObject || value instanceof Map) {
+      Map<String, Object> map = value instanceof JsonObject ? ((JsonObject) value).getMap() : (Map<String, Object>) value;
+      generator.writeStartObject();
+      for (Map.Entry<String, Object> entry : map.entrySet()) {
+        generator.writeFieldName(entry.getKey());
+        write(generator, entry.getValue());
+      }
+      generator.writeEndObject();
+    } else if (value instanceof JsonArray || value instanceof List) {
+      List<Object> list = value instanceof JsonArray ? ((JsonArray) value).getList() : (List<Object>) value;
+      generator.writeStartArray();
+      for (Object element : list) {
+        write(generator, element);
+      }
+      generator.writeEndArray();
+    } else if (value instanceof CharSequence) {
+      generator.writeString(value.toString());
+    } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      generator.writeNumber(((Number) value).intValue());
+    } else if (value instanceof Long) {
+      generator.writeNumber((Long) value);
+    } else if (value instanceof Double || value instanceof Float) {
+      generator.writeNumber(((Number) value).doubleValue());
+    } else if (value instanceof BigInteger) {
+      generator.writeNumber((BigInteger) value);
+    } else if (value instanceof BigDecimal) {
+      generator.writeNumber((BigDecimal) value);
+    } else if (value instanceof Boolean) {
+      generator.writeBoolean((Boolean) value);
+    } else if (value instanceof byte[]) {
+      generator.writeBinary((byte[]) value);
+    } else if (value instanceof Buffer) {
+      generator.writeBinary(((Buffer) value).getBytes());
+    } else if (value instanceof Instant) {
+      generator.writeString(DateTimeFormatter.ISO_INSTANT.format((Instant) value));
+    } else if (value instanceof Enum) {
+      generator.writeString(((Enum<?>) value).name());
+    } else {
+      throw new EncodeException("Unsupported type: " + value.getClass().getName());
+    }
+  }
+
+  private static Object read(JsonParser parser, JsonToken token) throws IOException {
+    if (token == null) {
+      throw new DecodeException("Unexpected end of input");
+    }
+    switch (token) {
+      case START_OBJECT:
+        JsonObject object = new JsonObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String name = parser.getCurrentName();
+          object.put(name, read(parser, parser.nextToken()));
+        }
+        return object;
+      case START_ARRAY:
+        JsonArray array = new JsonArray();
+        for (JsonToken next = parser.nextToken(); next != JsonToken.END_ARRAY; next = parser.nextToken()) {
+          array.add(read(parser, next));
+        }
+        return array;
+      case VALUE_STRING:
+        return parser.getText();
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+        return parser.getNumberValue();
+      case VALUE_TRUE:
+        return Boolean.TRUE;
+      case VALUE_FALSE:
+        return Boolean.FALSE;
+      case VALUE_NULL:
+        return null;
+      case VALUE_EMBEDDED_OBJECT:
+        return parser.getBinaryValue();
+      default:
+        throw new DecodeException("Unexpected token: " + token);
+    }
+  }
+
+  private interface GeneratorWriter {
+    void write(JsonGenerator generator) throws IOException;
+  }
+}
@@ -1,11 +1,27 @@
 package com.code.block.rest_service.utils;
 
+import com.code.block.rest_service.metrics.RequestTiming;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.web.RoutingContext;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+import static com.code.block.rest_service.metrics.RequestTiming.Phase.SERIALIZATION;
+
+@Slf4j
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class ResponseUtils {
+  public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+  private static final Buffer EMPTY = Buffer.buffer();
+  private static final Buffer NEWLINE = Buffer.buffer("\n");
+
   public static void response(RoutingContext routingContext, int code, String message) {
     routingContext.response()
       .setStatusCode(code)
@@ -20,4 +36,115 @@ public class ResponseUtils {
       .putHeader("Content-Type", "application/json")
       .end(body);
   }
+
+  public static void response(RoutingContext routingContext, int code, String message, MediaFormat format, Buffer body) {
+    routingContext.response()
+      .setStatusCode(code)
+      .setStatusMessage(message)
+      .putHeader("Content-Type", format.getContentType())
+      .end(body);
+  }
+
+  /**
+   * Writes the stream as a chunked JSON array. The stream is paused while the response write queue is full,
+   * so memory use does not depend on the number of items. As the headers go out with the first item, a
+   * {@code Server-Timing} header only covers the work done until then. Failures before the first item are answered with
+   * {@code 500 errorMessage}, later ones reset the connection as the status line is already sent. When the client goes
+   * away first, the stream is cancelled by clearing its handler, which closes the database cursor.
+   */
+  public static void response(RoutingContext routingContext, int code, String message, String errorMessage,
+                              ReadStream<JsonObject> items) {
+    response(routingContext, code, message, errorMessage, items, MediaFormat.JSON);
+  }
+
+  /**
+   * Writes the stream as an array in the given format, with the same backpressure and error handling as
+   * {@link #response(RoutingContext, int, String, String, ReadStream)}.
+   */
+  public static void response(RoutingContext routingContext, int code, String message, String errorMessage,
+                              ReadStream<JsonObject> items, MediaFormat format) {
+    stream(routingContext, code, message, errorMessage, items, format.getContentType(), format::encodeItem,
+      format.arrayStart(), format.separator(), format.arrayEnd(),
+      Buffer.buffer().appendBuffer(format.arrayStart()).appendBuffer(format.arrayEnd()));
+  }
+
+  /**
+   * Writes the stream as newline-delimited JSON, with the same backpressure and error handling as
+   * {@link #response(RoutingContext, int, String, String, ReadStream)}.
+   */
+  public static void ndjsonResponse(RoutingContext routingContext, int code, String message, String errorMessage,
+                                    ReadStream<JsonObject> items) {
+    stream(routingContext, code, message, errorMessage, items, NDJSON_CONTENT_TYPE, JsonObject::toBuffer,
+      EMPTY, NEWLINE, NEWLINE, EMPTY);
+  }
+
+  private static void stream(RoutingContext routingContext, int code, String message, String errorMessage,
+                             ReadStream<JsonObject> items, String contentType, Function<JsonObject, Buffer> encoder,
+                             Buffer open, Buffer separator, Buffer close, Buffer emptyBody) {
+    HttpServerResponse response = routingContext.response();
+    RequestTiming timing = RequestTiming.of(routingContext);
+    boolean[] started = {false};
+    boolean[] finished = {false};
+
+    items.exceptionHandler(throwable -> {
+      finished[0] = true;
+      log.error("Streaming response failed: {}", throwable.getMessage());
+      if (response.ended() || response.closed()) {
+        return;
+      }
+      if (started[0]) {
+        response.reset();
+      } else if (throwable instanceof RejectedExecutionException) {
+        response.putHeader("Retry-After", "1");
+        response(routingContext, 503, "Service busy, retry later");
+      } else {
+        response(routingContext, 500, errorMessage);
+      }
+    });
+    items.endHandler(v -> {
+      finished[0] = true;
+      if (response.ended() || response.closed()) {
+        return;
+      }
+      if (started[0]) {
+        response.end(close.copy());
+      } else {
+        response.setStatusCode(code)
+          .setStatusMessage(message)
+          .putHeader("Content-Type", contentType)
+          .end(emptyBody.copy());
+      }
+    });
+    response.closeHandler(v -> {
+      if (!finished[0]) {
+        finished[0] = true;
+        items.pause();
+        items.handler(null);
+      }
+    });
+    items.handler(item -> {
+      if (response.closed()) {
+        return;
+      }
+      long encodeStart = System.nanoTime();
+      Buffer encoded = encoder.apply(item);
+      timing.add(SERIALIZATION, encodeStart);
+      Buffer prefix = started[0] ? separator : open;
+      Buffer chunk = Buffer.buffer(prefix.length() + encoded.length()).appendBuffer(prefix).appendBuffer(encoded);
+      if (started[0]) {
+        response.write(chunk);
+      } else {
+        started[0] = true;
+        response.setChunked(true)
+          .setStatusCode(code)
+          .setStatusMessage(message)
+          .putHeader("Content-Type", contentType)
+          .write(chunk);
+      }
+      if (response.writeQueueFull()) {
+        items.pause();
+        response.drainHandler(v -> items.resume());
+      }
+    });
+  }
 }
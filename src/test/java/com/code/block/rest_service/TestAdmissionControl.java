@@ -0,0 +1,208 @@
+package com.code.block.rest_service;
+
+import com.code.block.rest_service.metrics.Metrics;
+import com.code.block.rest_service.repository.InMemoryStorage;
+import com.code.block.rest_service.repository.Storage;
+import com.code.block.rest_service.service.AdmissionControl;
+import com.code.block.rest_service.service.HealthCheck;
+import com.code.block.rest_service.service.ItemFeed;
+import com.code.block.rest_service.service.PasswordHasher;
+import com.code.block.rest_service.service.RateLimiter;
+import com.code.block.rest_service.service.RestRouter;
+import com.code.block.rest_service.service.RestService;
+import com.code.block.rest_service.service.TitleSearch;
+import com.code.block.rest_service.service.TokenIssuer;
+import com.code.block.rest_service.service.TokenRevocations;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.JWTOptions;
+import io.vertx.ext.auth.PubSecKeyOptions;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.ext.web.AllowForwardHeaders;
+import io.vertx.ext.web.handler.impl.JWTAuthHandlerImpl;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+class TestAdmissionControl {
+
+    JWTAuth jwtProvider;
+
+    @BeforeEach
+    void setup(Vertx vertx) {
+        jwtProvider = JWTAuth.create(vertx, new JWTAuthOptions()
+                .addPubSecKey(new PubSecKeyOptions().setAlgorithm("HS256").setBuffer("secret")));
+    }
+
+    @Test
+    void shouldRefillBucketAtConfiguredRate() {
+        //given
+        RateLimiter limiter = new RateLimiter(2, 2, 10);
+
+        //when
+        long first = limiter.tryAcquire("user");
+        long second = limiter.tryAcquire("user");
+        long third = limiter.tryAcquire("user");
+        long otherKey = limiter.tryAcquire("other");
+
+        //then
+        assertEquals(0, first);
+        assertEquals(0, second);
+        assertTrue(third > 0 && third <= TimeUnit.MILLISECONDS.toNanos(500), "wait " + third);
+        assertEquals(0, otherKey);
+        assertEquals(1, limiter.stats().getLong("rejected"));
+    }
+
+    @Test
+    void shouldNeverDropDepletedBucketToMakeRoomForNewKeys() throws InterruptedException {
+        //given
+        RateLimiter limiter = new RateLimiter(0.001, 1, 2);
+        RateLimiter fastLimiter = new RateLimiter(1_000, 1, 1);
+        limiter.tryAcquire("login:victim");
+        limiter.tryAcquire("login:other");
+        fastLimiter.tryAcquire("first");
+
+        //when
+        long newKey = limiter.tryAcquire("login:attacker");
+        long victim = limiter.tryAcquire("login:victim");
+        TimeUnit.MILLISECONDS.sleep(5);
+        long afterRefill = fastLimiter.tryAcquire("second");
+
+        //then
+        assertTrue(newKey > 0);
+        assertTrue(victim > TimeUnit.SECONDS.toNanos(1), "wait " + victim);
+        assertEquals(2, limiter.stats().getInteger("keys"));
+        assertEquals(1, limiter.stats().getLong("rejectedNewKeys"));
+        assertEquals(0, afterRefill);
+        assertEquals(1, fastLimiter.stats().getInteger("keys"));
+    }
+
+    @Test
+    void shouldLimitRegistrationsPerAddress(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        JsonObject credentials = new JsonObject().put("login", "limited").put("password", "password");
+
+        //when
+        deploy(vertx, new AdmissionControl(0, null, new RateLimiter(1, 1, 10)))
+                .compose(id -> client.request(HttpMethod.POST, 8888, "localhost", "/register"))
+                .compose(req -> req.send(credentials.toBuffer()))
+                .compose(res -> client.request(HttpMethod.POST, 8888, "localhost", "/register"))
+                .compose(req -> req.send(credentials.put("login", "limited2").toBuffer()))
+                .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+                    //then
+                    assertEquals(429, response.statusCode());
+                    assertEquals("1", response.getHeader(AdmissionControl.RETRY_AFTER_HEADER));
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldLimitRegistrationsPerForwardedAddress(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        JsonObject credentials = new JsonObject().put("login", "forwarded").put("password", "password");
+
+        //when
+        deploy(vertx, new AdmissionControl(0, null, new RateLimiter(1, 1, 10)), AllowForwardHeaders.X_FORWARD)
+                .compose(id -> client.request(HttpMethod.POST, 8888, "localhost", "/register"))
+                .compose(req -> req.putHeader("X-Forwarded-For", "203.0.113.1").send(credentials.toBuffer()))
+                .compose(res -> client.request(HttpMethod.POST, 8888, "localhost", "/register"))
+                .compose(req -> req.putHeader("X-Forwarded-For", "203.0.113.2")
+                        .send(credentials.put("login", "forwarded2").toBuffer()))
+                .compose(res -> {
+                    assertEquals(200, res.statusCode());
+                    return client.request(HttpMethod.POST, 8888, "localhost", "/register");
+                })
+                .compose(req -> req.putHeader("X-Forwarded-For", "203.0.113.1")
+                        .send(credentials.put("login", "forwarded3").toBuffer()))
+                .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+                    //then
+                    assertEquals(429, response.statusCode());
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldShedRequestsAboveInFlightCap(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        HttpClientRequest[] pending = new HttpClientRequest[1];
+
+        //when
+        deploy(vertx, new AdmissionControl(1, null, null))
+                .compose(id -> client.request(HttpMethod.POST, 8888, "localhost", "/register"))
+                .compose(req -> {
+                    // the registration stays in flight until its body ends
+                    pending[0] = req;
+                    return req.setChunked(true).write("{\"login\": \"slow\", ");
+                })
+                .compose(v -> {
+                    Promise<Void> delay = Promise.promise();
+                    vertx.setTimer(100, id -> delay.complete());
+                    return delay.future();
+                })
+                .compose(v -> client.request(HttpMethod.GET, 8888, "localhost", "/items"))
+                .compose(req -> req.send())
+                .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+                    //then
+                    assertEquals(503, response.statusCode());
+                    assertEquals("1", response.getHeader(AdmissionControl.RETRY_AFTER_HEADER));
+                    pending[0].end("\"password\": \"password\"}");
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldLimitRequestsPerUser(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        String token = jwtProvider.generateToken(new JsonObject().put("_id", "111"));
+
+        //when
+        deploy(vertx, new AdmissionControl(0, new RateLimiter(1, 1, 10), null))
+                .compose(id -> client.request(HttpMethod.GET, 8888, "localhost", "/items"))
+                .compose(req -> req.putHeader("Authorization", "Bearer " + token).send())
+                .compose(res -> {
+                    assertEquals(200, res.statusCode());
+                    return client.request(HttpMethod.GET, 8888, "localhost", "/items");
+                })
+                .compose(req -> req.putHeader("Authorization", "Bearer " + token).send())
+                .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+                    //then
+                    assertEquals(429, response.statusCode());
+                    assertEquals("1", response.getHeader(AdmissionControl.RETRY_AFTER_HEADER));
+                    testContext.completeNow();
+                })));
+    }
+
+    private Future<String> deploy(Vertx vertx, AdmissionControl admissionControl) {
+        return deploy(vertx, admissionControl, AllowForwardHeaders.NONE);
+    }
+
+    private Future<String> deploy(Vertx vertx, AdmissionControl admissionControl, AllowForwardHeaders allowForward) {
+        Storage storage = new InMemoryStorage();
+        RestRouter restRouter = new RestRouter(new JWTAuthHandlerImpl(jwtProvider, null),
+                new TokenIssuer(vertx, jwtProvider, new JWTOptions(), 1, 10),
+                new PasswordHasher(vertx, 1, 10, 1, 1_000), storage, new Metrics(), admissionControl,
+                HealthCheck.alwaysReady(), new TokenRevocations(null, storage, 100, 0.01, 0),
+                new ItemFeed(null, 10, 10, 65_536, 0), new TitleSearch(storage, 1_000, 1_000));
+        return vertx.deployVerticle(new RestService(restRouter, new HttpServerOptions(), 0,
+                RestService.DEFAULT_CREDENTIALS_BODY_LIMIT, RestService.DEFAULT_ITEM_BODY_LIMIT, allowForward));
+    }
+}
@@ -0,0 +1,106 @@
+package com.code.block.rest_service;
+
+import com.code.block.rest_service.metrics.Metrics;
+import com.code.block.rest_service.repository.ListReadStream;
+import com.code.block.rest_service.repository.Storage;
+import com.code.block.rest_service.service.AdmissionControl;
+import com.code.block.rest_service.service.CachingJWTAuthHandler;
+import com.code.block.rest_service.service.HealthCheck;
+import com.code.block.rest_service.service.ItemFeed;
+import com.code.block.rest_service.service.PasswordHasher;
+import com.code.block.rest_service.service.RestRouter;
+import com.code.block.rest_service.service.RestService;
+import com.code.block.rest_service.service.TitleSearch;
+import com.code.block.rest_service.service.TokenIssuer;
+import com.code.block.rest_service.service.TokenRevocations;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.JWTOptions;
+import io.vertx.ext.auth.KeyStoreOptions;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+
+@ExtendWith(VertxExtension.class)
+@ExtendWith(MockitoExtension.class)
+class TestCachingJWTAuthHandler {
+
+    @Mock
+    Storage storage;
+
+    private JWTAuth provider;
+    private CachingJWTAuthHandler authHandler;
+
+    @BeforeEach
+    void setup(Vertx vertx, VertxTestContext testContext) {
+        provider = JWTAuth.create(vertx, new JWTAuthOptions()
+                .setKeyStore(new KeyStoreOptions()
+                        .setPath("./src/test/resources/keystore.jceks")
+                        .setPassword("password")));
+        authHandler = new CachingJWTAuthHandler(provider, 100, 60_000);
+        RestService restService = new RestService(new RestRouter(authHandler, new TokenIssuer(vertx, provider, new JWTOptions(), 1, 10),
+                new PasswordHasher(vertx, 1, 10, 1, 1_000), storage, new Metrics(), AdmissionControl.unlimited(),
+                HealthCheck.alwaysReady(), new TokenRevocations(null, storage, 100, 0.01, 0),
+                new ItemFeed(null, 10, 10, 65_536, 0), new TitleSearch(storage, 1_000, 1_000)));
+        vertx.deployVerticle(restService, testContext.succeeding(id -> testContext.completeNow()));
+    }
+
+    @Test
+    void shouldVerifyRepeatedTokenOnce(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        String token = provider.generateToken(new JsonObject().put("_id", "777"), new JWTOptions());
+
+        //when
+        Mockito.when(storage.getTitlesVersion(any())).thenReturn(Future.succeededFuture(1L));
+        Mockito.when(storage.streamTitles(any(), anyLong())).thenAnswer(invocation -> new ListReadStream<>(List.of()));
+
+        //then
+        getItems(client, token)
+                .compose(status -> getItems(client, token))
+                .onComplete(testContext.succeeding(status -> testContext.verify(() -> {
+                    assertEquals(200, status);
+                    assertEquals(1, authHandler.stats().getLong("hits"));
+                    assertEquals(1, authHandler.stats().getLong("misses"));
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldNotCacheRejectedToken(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+
+        //then
+        getItems(client, "not-a-token")
+                .compose(status -> getItems(client, "not-a-token"))
+                .onComplete(testContext.succeeding(status -> testContext.verify(() -> {
+                    assertEquals(403, status);
+                    assertEquals(0, authHandler.stats().getLong("hits"));
+                    assertEquals(0, authHandler.stats().getLong("size"));
+                    testContext.completeNow();
+                })));
+    }
+
+    private Future<Integer> getItems(HttpClient client, String token) {
+        return client.request(HttpMethod.GET, 8888, "localhost", "/items")
+                .compose(req -> req.putHeader("Authorization", "Bearer " + token).send())
+                .map(response -> response.statusCode());
+    }
+}
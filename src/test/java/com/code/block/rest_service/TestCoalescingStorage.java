@@ -0,0 +1,241 @@
+package com.code.block.rest_service;
+
+import com.code.block.rest_service.repository.CoalescingStorage;
+import com.code.block.rest_service.repository.ListReadStream;
+import com.code.block.rest_service.repository.Storage;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class TestCoalescingStorage {
+
+    private final Storage storage = Mockito.mock(Storage.class);
+    private final CoalescingStorage coalescingStorage = new CoalescingStorage(storage, 10);
+
+    @Test
+    void shouldShareOneReadBetweenConcurrentCalls() {
+        //given
+        Promise<List<JsonObject>> read = Promise.promise();
+        List<JsonObject> titles = List.of(new JsonObject().put("_id", "111").put("title", "first"));
+        Mockito.when(storage.getTitles("1111", 1)).thenReturn(read.future());
+
+        //when
+        Future<List<JsonObject>> first = coalescingStorage.getTitles("1111", 1);
+        Future<List<JsonObject>> second = coalescingStorage.getTitles("1111", 1);
+        Future<List<JsonObject>> third = coalescingStorage.getTitles("1111", 1);
+        read.complete(titles);
+
+        //then
+        Mockito.verify(storage, Mockito.times(1)).getTitles("1111", 1);
+        assertSame(titles, first.result());
+        assertSame(titles, second.result());
+        assertSame(titles, third.result());
+        assertEquals(3, coalescingStorage.stats().getLong("calls"));
+        assertEquals(2, coalescingStorage.stats().getLong("coalesced"));
+        assertEquals(0, coalescingStorage.stats().getInteger("inFlight"));
+    }
+
+    @Test
+    void shouldFanOutFailureAndReadAgainAfterwards() {
+        //given
+        Promise<List<JsonObject>> failing = Promise.promise();
+        Mockito.when(storage.getTitles("1111", 1))
+                .thenReturn(failing.future())
+                .thenReturn(Future.succeededFuture(List.of()));
+
+        //when
+        Future<List<JsonObject>> first = coalescingStorage.getTitles("1111", 1);
+        Future<List<JsonObject>> second = coalescingStorage.getTitles("1111", 1);
+        failing.fail("Storage down");
+        Future<List<JsonObject>> afterFailure = coalescingStorage.getTitles("1111", 1);
+
+        //then
+        assertTrue(first.failed());
+        assertTrue(second.failed());
+        assertTrue(afterFailure.result().isEmpty());
+        Mockito.verify(storage, Mockito.times(2)).getTitles("1111", 1);
+    }
+
+    @Test
+    void shouldStreamToFirstCallerAndShareBufferedTitlesWithOthers() {
+        //given
+        PushReadStream source = new PushReadStream();
+        Mockito.when(storage.streamTitles("1111", 1)).thenReturn(source);
+        List<JsonObject> leading = new ArrayList<>();
+        List<JsonObject> joined = new ArrayList<>();
+        AtomicInteger ended = new AtomicInteger();
+
+        //when
+        ReadStream<JsonObject> first = coalescingStorage.streamTitles("1111", 1);
+        ReadStream<JsonObject> second = coalescingStorage.streamTitles("1111", 1);
+        ReadStream<JsonObject> third = coalescingStorage.streamTitles("1111", 1);
+        for (ReadStream<JsonObject> stream : List.of(first, second, third)) {
+            stream.exceptionHandler(e -> fail(e));
+            stream.endHandler(v -> ended.incrementAndGet());
+            stream.handler(stream == first ? leading::add : joined::add);
+        }
+        source.push(new JsonObject().put("_id", "111").put("title", "first"));
+        int joinedBeforeEnd = joined.size();
+        source.push(new JsonObject().put("_id", "112").put("title", "second"));
+        source.end();
+
+        //then
+        Mockito.verify(storage, Mockito.times(1)).streamTitles("1111", 1);
+        assertEquals(2, leading.size());
+        assertEquals(0, joinedBeforeEnd);
+        assertEquals(4, joined.size());
+        assertEquals(3, ended.get());
+        assertEquals(2, coalescingStorage.stats().getLong("coalesced"));
+        assertEquals(0, coalescingStorage.stats().getInteger("inFlight"));
+    }
+
+    @Test
+    void shouldReadOnOwnWhenSharedStreamGrowsPastLimit() {
+        //given
+        CoalescingStorage coalescingStorage = new CoalescingStorage(storage, 1);
+        PushReadStream source = new PushReadStream();
+        List<JsonObject> titles = List.of(new JsonObject().put("_id", "111"), new JsonObject().put("_id", "112"));
+        Mockito.when(storage.streamTitles("1111", 1))
+                .thenReturn(source)
+                .thenReturn(new ListReadStream<>(titles));
+        List<JsonObject> joined = new ArrayList<>();
+
+        //when
+        coalescingStorage.streamTitles("1111", 1).handler(item -> { });
+        ReadStream<JsonObject> second = coalescingStorage.streamTitles("1111", 1);
+        second.handler(joined::add);
+        source.push(titles.get(0));
+        source.push(titles.get(1));
+
+        //then
+        Mockito.verify(storage, Mockito.times(2)).streamTitles("1111", 1);
+        assertEquals(titles, joined);
+        assertEquals(1, coalescingStorage.stats().getLong("unshared"));
+        assertEquals(0, coalescingStorage.stats().getInteger("inFlight"));
+    }
+
+    @Test
+    void shouldReadOnOwnWhenFirstCallerPauses() {
+        //given
+        PushReadStream source = new PushReadStream();
+        List<JsonObject> titles = List.of(new JsonObject().put("_id", "111"));
+        Mockito.when(storage.streamTitles("1111", 1))
+                .thenReturn(source)
+                .thenReturn(new ListReadStream<>(titles));
+        List<JsonObject> joined = new ArrayList<>();
+
+        //when
+        ReadStream<JsonObject> first = coalescingStorage.streamTitles("1111", 1);
+        first.handler(item -> { });
+        coalescingStorage.streamTitles("1111", 1).handler(joined::add);
+        source.push(titles.get(0));
+        first.pause();
+
+        //then
+        Mockito.verify(storage, Mockito.times(2)).streamTitles("1111", 1);
+        assertEquals(titles, joined);
+        assertEquals(1, coalescingStorage.stats().getLong("unshared"));
+        assertEquals(0, coalescingStorage.stats().getInteger("inFlight"));
+    }
+
+    @Test
+    void shouldFailJoinedStreamsWithSharedRead() {
+        //given
+        PushReadStream source = new PushReadStream();
+        Mockito.when(storage.streamTitles("1111", 1)).thenReturn(source);
+        List<Throwable> failures = new ArrayList<>();
+
+        //when
+        coalescingStorage.streamTitles("1111", 1).exceptionHandler(failures::add).handler(item -> { });
+        coalescingStorage.streamTitles("1111", 1).exceptionHandler(failures::add).handler(item -> { });
+        source.fail(new IllegalStateException("Storage down"));
+
+        //then
+        assertEquals(2, failures.size());
+        Mockito.verify(storage, Mockito.times(1)).streamTitles("1111", 1);
+    }
+
+    @Test
+    void shouldNotJoinReadOfOlderVersion() {
+        //given
+        Promise<List<JsonObject>> beforeSave = Promise.promise();
+        Mockito.when(storage.getTitles("1111", 1)).thenReturn(beforeSave.future());
+        Mockito.when(storage.getTitles("1111", 2)).thenReturn(Future.succeededFuture(List.of()));
+        coalescingStorage.getTitles("1111", 1);
+
+        //when
+        Future<List<JsonObject>> afterSave = coalescingStorage.getTitles("1111", 2);
+
+        //then
+        assertTrue(afterSave.succeeded());
+        Mockito.verify(storage, Mockito.times(1)).getTitles("1111", 2);
+        assertEquals(0, coalescingStorage.stats().getLong("coalesced"));
+    }
+
+    /**
+     * Stream whose items, end and failure the test pushes.
+     */
+    private static class PushReadStream implements ReadStream<JsonObject> {
+        private Handler<JsonObject> handler;
+        private Handler<Void> endHandler;
+        private Handler<Throwable> exceptionHandler;
+
+        void push(JsonObject item) {
+            handler.handle(item);
+        }
+
+        void end() {
+            endHandler.handle(null);
+        }
+
+        void fail(Throwable cause) {
+            exceptionHandler.handle(cause);
+        }
+
+        @Override
+        public ReadStream<JsonObject> exceptionHandler(Handler<Throwable> handler) {
+            this.exceptionHandler = handler;
+            return this;
+        }
+
+        @Override
+        public ReadStream<JsonObject> handler(Handler<JsonObject> handler) {
+            this.handler = handler;
+            return this;
+        }
+
+        @Override
+        public ReadStream<JsonObject> pause() {
+            return this;
+        }
+
+        @Override
+        public ReadStream<JsonObject> resume() {
+            return this;
+        }
+
+        @Override
+        public ReadStream<JsonObject> fetch(long amount) {
+            return this;
+        }
+
+        @Override
+        public ReadStream<JsonObject> endHandler(Handler<Void> endHandler) {
+            this.endHandler = endHandler;
+            return this;
+        }
+    }
+}
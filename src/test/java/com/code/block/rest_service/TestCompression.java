@@ -0,0 +1,111 @@
+package com.code.block.rest_service;
+
+import com.code.block.rest_service.metrics.Metrics;
+import com.code.block.rest_service.repository.InMemoryStorage;
+import com.code.block.rest_service.repository.Storage;
+import com.code.block.rest_service.service.AdmissionControl;
+import com.code.block.rest_service.service.HealthCheck;
+import com.code.block.rest_service.service.ItemFeed;
+import com.code.block.rest_service.service.PasswordHasher;
+import com.code.block.rest_service.service.RestRouter;
+import com.code.block.rest_service.service.RestService;
+import com.code.block.rest_service.service.TitleSearch;
+import com.code.block.rest_service.service.TokenIssuer;
+import com.code.block.rest_service.service.TokenRevocations;
+import io.netty.handler.codec.compression.StandardCompressionOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.JWTOptions;
+import io.vertx.ext.auth.PubSecKeyOptions;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.ext.web.handler.impl.JWTAuthHandlerImpl;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ExtendWith(VertxExtension.class)
+class TestCompression {
+
+    @BeforeEach
+    void setup(Vertx vertx, VertxTestContext testContext) {
+        JWTAuth jwtProvider = JWTAuth.create(vertx, new JWTAuthOptions()
+                .addPubSecKey(new PubSecKeyOptions().setAlgorithm("HS256").setBuffer("secret")));
+        Storage storage = new InMemoryStorage();
+        RestRouter restRouter = new RestRouter(new JWTAuthHandlerImpl(jwtProvider, null),
+                new TokenIssuer(vertx, jwtProvider, new JWTOptions(), 1, 10),
+                new PasswordHasher(vertx, 1, 10, 1, 1_000), storage, new Metrics(), AdmissionControl.unlimited(),
+                HealthCheck.alwaysReady(), new TokenRevocations(null, storage, 100, 0.01, 0),
+                new ItemFeed(null, 10, 10, 65_536, 0), new TitleSearch(storage, 1_000, 1_000));
+        HttpServerOptions serverOptions = new HttpServerOptions()
+                .setCompressionSupported(true)
+                .addCompressor(StandardCompressionOptions.brotli())
+                .addCompressor(StandardCompressionOptions.gzip());
+        vertx.deployVerticle(new RestService(restRouter, serverOptions, 1_024),
+                testContext.succeeding(id -> testContext.completeNow()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"gzip", "br"})
+    void shouldCompressLargeResponse(String encoding, Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+
+        //when
+        client.request(HttpMethod.GET, 8888, "localhost", "/metrics")
+                .compose(req -> req.putHeader(HttpHeaders.ACCEPT_ENCODING, encoding).send())
+                .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+                    //then
+                    assertEquals(200, response.statusCode());
+                    assertEquals(encoding, response.getHeader(HttpHeaders.CONTENT_ENCODING));
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldNotCompressResponseBelowThreshold(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        JsonObject credentials = new JsonObject().put("login", "compression").put("password", "password");
+
+        //when
+        client.request(HttpMethod.POST, 8888, "localhost", "/register")
+                .compose(req -> req.putHeader(HttpHeaders.ACCEPT_ENCODING, "gzip").send(credentials.toBuffer()))
+                .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+                    //then
+                    assertEquals(200, response.statusCode());
+                    assertEquals("identity", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldServeCompressedHttp2WithPriorKnowledge(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient(new HttpClientOptions()
+                .setProtocolVersion(HttpVersion.HTTP_2)
+                .setHttp2ClearTextUpgrade(false));
+
+        //when
+        client.request(HttpMethod.GET, 8888, "localhost", "/metrics")
+                .compose(req -> req.putHeader(HttpHeaders.ACCEPT_ENCODING, "gzip").send())
+                .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+                    //then
+                    assertEquals(HttpVersion.HTTP_2, response.version());
+                    assertEquals("gzip", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+                    testContext.completeNow();
+                })));
+    }
+}
@@ -0,0 +1,127 @@
+package com.code.block.rest_service;
+
+import com.code.block.rest_service.metrics.Metrics;
+import com.code.block.rest_service.repository.InMemoryStorage;
+import com.code.block.rest_service.repository.Storage;
+import com.code.block.rest_service.service.AdmissionControl;
+import com.code.block.rest_service.service.HealthCheck;
+import com.code.block.rest_service.service.ItemFeed;
+import com.code.block.rest_service.service.PasswordHasher;
+import com.code.block.rest_service.service.RestRouter;
+import com.code.block.rest_service.service.RestService;
+import com.code.block.rest_service.service.TitleSearch;
+import com.code.block.rest_service.service.TokenIssuer;
+import com.code.block.rest_service.service.TokenRevocations;
+import com.code.block.rest_service.service.WarmUp;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.ext.auth.JWTOptions;
+import io.vertx.ext.auth.PubSecKeyOptions;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.ext.web.handler.impl.JWTAuthHandlerImpl;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+class TestHealthCheck {
+
+    JWTAuth jwtProvider;
+    TokenIssuer tokenIssuer;
+    PasswordHasher passwordHasher;
+    Storage storage;
+
+    @BeforeEach
+    void setup(Vertx vertx) {
+        jwtProvider = JWTAuth.create(vertx, new JWTAuthOptions()
+                .addPubSecKey(new PubSecKeyOptions().setAlgorithm("HS256").setBuffer("secret")));
+        tokenIssuer = new TokenIssuer(vertx, jwtProvider, new JWTOptions(), 1, 10);
+        passwordHasher = new PasswordHasher(vertx, 1, 10, 1, 1_000);
+        storage = new InMemoryStorage();
+    }
+
+    @Test
+    void shouldReportReadyOnlyAfterWarmUp(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        HealthCheck healthCheck = new HealthCheck(1_000)
+                .addCheck("storage", () -> storage.getTitlesVersion(WarmUp.WARM_UP_USER_ID));
+
+        //when
+        deploy(vertx, healthCheck)
+                .compose(id -> get(client, "/health/live"))
+                .compose(live -> {
+                    assertEquals(200, live.statusCode());
+                    return get(client, "/health/ready");
+                })
+                .compose(warmingUp -> {
+                    assertEquals(503, warmingUp.statusCode());
+                    return new WarmUp(vertx, tokenIssuer, jwtProvider, passwordHasher, storage, 2, 3).run();
+                })
+                .compose(v -> {
+                    healthCheck.markWarmedUp();
+                    return get(client, "/health/ready");
+                })
+                .onComplete(testContext.succeeding(ready -> testContext.verify(() -> {
+                    //then
+                    assertEquals(200, ready.statusCode());
+                    assertTrue(tokenIssuer.stats().getLong("issued") >= 4);
+                    assertTrue(storage.getTitles(WarmUp.WARM_UP_USER_ID, 0).result().isEmpty());
+                    assertEquals(1, healthCheck.stats().getInteger("checksPassed"));
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldReuseFailedCheckWhileFresh(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        AtomicInteger runs = new AtomicInteger();
+        HealthCheck healthCheck = new HealthCheck(60_000)
+                .addCheck("storage", () -> {
+                    runs.incrementAndGet();
+                    return Future.failedFuture("storage down");
+                });
+        healthCheck.markWarmedUp();
+
+        //when
+        deploy(vertx, healthCheck)
+                .compose(id -> get(client, "/health/ready"))
+                .compose(first -> {
+                    assertEquals(503, first.statusCode());
+                    return get(client, "/health/ready");
+                })
+                .onComplete(testContext.succeeding(second -> testContext.verify(() -> {
+                    //then
+                    assertEquals(503, second.statusCode());
+                    assertEquals(1, runs.get());
+                    assertEquals(0, healthCheck.stats().getInteger("checksPassed"));
+                    testContext.completeNow();
+                })));
+    }
+
+    private Future<String> deploy(Vertx vertx, HealthCheck healthCheck) {
+        RestRouter restRouter = new RestRouter(new JWTAuthHandlerImpl(jwtProvider, null), tokenIssuer, passwordHasher,
+                storage, new Metrics(), AdmissionControl.unlimited(), healthCheck,
+                new TokenRevocations(null, storage, 100, 0.01, 0), new ItemFeed(null, 10, 10, 65_536, 0),
+                new TitleSearch(storage, 1_000, 1_000));
+        return vertx.deployVerticle(new RestService(restRouter));
+    }
+
+    private static Future<HttpClientResponse> get(HttpClient client, String path) {
+        return client.request(HttpMethod.GET, 8888, "localhost", path)
+                .compose(req -> req.send())
+                .compose(response -> response.body().map(response));
+    }
+}
@@ -0,0 +1,77 @@
+package com.code.block.rest_service;
+
+import com.code.block.rest_service.model.User;
+import com.code.block.rest_service.repository.InMemoryStorage;
+import com.code.block.rest_service.repository.LoginAlreadyPresentException;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestInMemoryStorage {
+
+    private final InMemoryStorage storage = new InMemoryStorage();
+
+    @Test
+    void shouldRejectDuplicateLogin() {
+        //when
+        storage.saveUser(new JsonObject().put("login", "user").put("password", "hash"));
+        Future<Void> duplicate = storage.saveUser(new JsonObject().put("login", "user").put("password", "other"));
+
+        //then
+        assertInstanceOf(LoginAlreadyPresentException.class, duplicate.cause());
+        assertTrue(storage.isLoginPresent("user").result());
+        User user = storage.getUser("user").result().orElseThrow();
+        assertEquals("hash", user.getPassword());
+        assertFalse(storage.getUser("other").result().isPresent());
+    }
+
+    @Test
+    void shouldPageTitlesInInsertionOrder() {
+        //given
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(storage.saveTitle(new JsonObject().put("title", "title" + i).put("userId", "user1")).result());
+        }
+        storage.saveTitle(new JsonObject().put("title", "other").put("userId", "user2"));
+
+        //when
+        List<JsonObject> firstPage = storage.getTitles("user1", null, 2).result();
+        List<JsonObject> secondPage = storage.getTitles("user1", ids.get(1), 2).result();
+        List<JsonObject> lastPage = storage.getTitles("user1", ids.get(4), 2).result();
+
+        //then
+        assertEquals(List.of("title0", "title1"), titlesOf(firstPage));
+        assertEquals(List.of("title2", "title3"), titlesOf(secondPage));
+        assertTrue(lastPage.isEmpty());
+        assertEquals(5, storage.getTitles("user1", 0).result().size());
+    }
+
+    @Test
+    void shouldRaiseTitlesVersionOnlyForUserWhoSaved() {
+        //given
+        long before = storage.getTitlesVersion("user1").result();
+        long otherBefore = storage.getTitlesVersion("user2").result();
+
+        //when
+        storage.saveTitle(new JsonObject().put("title", "title").put("userId", "user1"));
+        storage.saveTitles(List.of(new JsonObject().put("title", "imported").put("userId", "user1")));
+
+        //then
+        assertTrue(storage.getTitlesVersion("user1").result() > before);
+        assertEquals(otherBefore, storage.getTitlesVersion("user2").result());
+    }
+
+    private static List<String> titlesOf(List<JsonObject> items) {
+        List<String> titles = new ArrayList<>();
+        items.forEach(item -> titles.add(item.getString("title")));
+        return titles;
+    }
+}
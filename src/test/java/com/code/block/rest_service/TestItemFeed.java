@@ -0,0 +1,130 @@
+package com.code.block.rest_service;
+
+import com.code.block.rest_service.metrics.Metrics;
+import com.code.block.rest_service.repository.InMemoryStorage;
+import com.code.block.rest_service.repository.Storage;
+import com.code.block.rest_service.service.AdmissionControl;
+import com.code.block.rest_service.service.HealthCheck;
+import com.code.block.rest_service.service.ItemFeed;
+import com.code.block.rest_service.service.PasswordHasher;
+import com.code.block.rest_service.service.RestRouter;
+import com.code.block.rest_service.service.RestService;
+import com.code.block.rest_service.service.TitleSearch;
+import com.code.block.rest_service.service.TokenIssuer;
+import com.code.block.rest_service.service.TokenRevocations;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.JWTOptions;
+import io.vertx.ext.auth.PubSecKeyOptions;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.ext.web.handler.impl.JWTAuthHandlerImpl;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+class TestItemFeed {
+
+    JWTAuth jwtProvider;
+    String token;
+
+    @BeforeEach
+    void setup(Vertx vertx) {
+        jwtProvider = JWTAuth.create(vertx, new JWTAuthOptions()
+                .addPubSecKey(new PubSecKeyOptions().setAlgorithm("HS256").setBuffer("secret")));
+        token = jwtProvider.generateToken(new JsonObject().put("_id", "111"));
+    }
+
+    @Test
+    void shouldPushSavedItemToOpenStream(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        ItemFeed itemFeed = new ItemFeed(vertx, 10, 10, 65_536, 0);
+        Metrics metrics = new Metrics();
+        StringBuilder events = new StringBuilder();
+        Promise<Void> connected = Promise.promise();
+
+        //when
+        deploy(vertx, itemFeed, metrics)
+                .compose(id -> openStream(client))
+                .compose(stream -> {
+                    assertEquals(200, stream.statusCode());
+                    assertEquals(ItemFeed.EVENT_STREAM_CONTENT_TYPE, stream.getHeader("Content-Type"));
+                    stream.handler(chunk -> {
+                        events.append(chunk.toString());
+                        if (events.indexOf(": connected") >= 0) {
+                            connected.tryComplete();
+                        }
+                        if (events.indexOf("event: item") >= 0) {
+                            testContext.verify(() -> {
+                                //then
+                                assertTrue(events.indexOf("\"title\":\"streamed\"") >= 0, events.toString());
+                                assertEquals(1, itemFeed.stats().getLong("delivered"));
+                                testContext.completeNow();
+                            });
+                        }
+                    });
+                    return connected.future();
+                })
+                .compose(v -> {
+                    testContext.verify(() -> assertTrue(metrics.render().contains("http_requests_in_flight 0\n"),
+                            "open streams are not requests in flight"));
+                    return client.request(HttpMethod.POST, 8888, "localhost", "/items");
+                })
+                .compose(req -> req.putHeader("Authorization", "Bearer " + token)
+                        .send(new JsonObject().put("title", "streamed").toBuffer()))
+                .onFailure(testContext::failNow);
+    }
+
+    @Test
+    void shouldDropStreamThatFallsBehind(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        ItemFeed itemFeed = new ItemFeed(null, 10, 10, 1_024, 0);
+
+        //when
+        deploy(vertx, itemFeed, new Metrics())
+                .compose(id -> openStream(client))
+                .compose(stream -> {
+                    stream.pause();
+                    for (int i = 0; i < 10_000; i++) {
+                        itemFeed.publish("111", new JsonObject().put("_id", Integer.toString(i)).put("title", "title" + i));
+                    }
+                    Promise<Void> delay = Promise.promise();
+                    vertx.setTimer(100, id -> delay.complete());
+                    return delay.future();
+                })
+                .onComplete(testContext.succeeding(v -> testContext.verify(() -> {
+                    //then
+                    assertEquals(1, itemFeed.stats().getLong("dropped"));
+                    assertEquals(0, itemFeed.stats().getInteger("connections"));
+                    testContext.completeNow();
+                })));
+    }
+
+    private Future<String> deploy(Vertx vertx, ItemFeed itemFeed, Metrics metrics) {
+        Storage storage = new InMemoryStorage();
+        RestRouter restRouter = new RestRouter(new JWTAuthHandlerImpl(jwtProvider, null),
+                new TokenIssuer(vertx, jwtProvider, new JWTOptions(), 1, 10),
+                new PasswordHasher(vertx, 1, 10, 1, 1_000), storage, metrics, AdmissionControl.unlimited(),
+                HealthCheck.alwaysReady(), new TokenRevocations(null, storage, 100, 0.01, 0), itemFeed,
+                new TitleSearch(storage, 1_000, 1_000));
+        return vertx.deployVerticle(new RestService(restRouter));
+    }
+
+    private Future<HttpClientResponse> openStream(HttpClient client) {
+        return client.request(HttpMethod.GET, 8888, "localhost", "/items/stream")
+                .compose(req -> req.putHeader("Authorization", "Bearer " + token).send());
+    }
+}
@@ -0,0 +1,73 @@
+package com.code.block.rest_service;
+
+import com.code.block.rest_service.load.LoadGenerator;
+import com.code.block.rest_service.load.LoadGenerator.Route;
+import com.code.block.rest_service.metrics.Metrics;
+import com.code.block.rest_service.repository.InMemoryStorage;
+import com.code.block.rest_service.repository.Storage;
+import com.code.block.rest_service.service.AdmissionControl;
+import com.code.block.rest_service.service.HealthCheck;
+import com.code.block.rest_service.service.ItemFeed;
+import com.code.block.rest_service.service.PasswordHasher;
+import com.code.block.rest_service.service.RestRouter;
+import com.code.block.rest_service.service.RestService;
+import com.code.block.rest_service.service.TitleSearch;
+import com.code.block.rest_service.service.TokenIssuer;
+import com.code.block.rest_service.service.TokenRevocations;
+import io.vertx.core.Vertx;
+import io.vertx.ext.auth.JWTOptions;
+import io.vertx.ext.auth.PubSecKeyOptions;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.ext.web.handler.impl.JWTAuthHandlerImpl;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+class TestLoadGenerator {
+
+    @BeforeEach
+    void setup(Vertx vertx, VertxTestContext testContext) {
+        JWTAuth jwtProvider = JWTAuth.create(vertx, new JWTAuthOptions()
+                .addPubSecKey(new PubSecKeyOptions().setAlgorithm("HS256").setBuffer("secret")));
+        Storage storage = new InMemoryStorage();
+        RestRouter restRouter = new RestRouter(new JWTAuthHandlerImpl(jwtProvider, null),
+                new TokenIssuer(vertx, jwtProvider, new JWTOptions(), 1, 100),
+                new PasswordHasher(vertx, 1, 100, 1, 1_000), storage, new Metrics(), AdmissionControl.unlimited(),
+                HealthCheck.alwaysReady(), new TokenRevocations(null, storage, 100, 0.01, 0),
+                new ItemFeed(null, 10, 10, 65_536, 0), new TitleSearch(storage, 1_000, 1_000));
+        vertx.deployVerticle(new RestService(restRouter), testContext.succeeding(id -> testContext.completeNow()));
+    }
+
+    @Test
+    void shouldRecordEveryRouteOfTheMix(Vertx vertx, VertxTestContext testContext) {
+        //given
+        LoadGenerator generator = new LoadGenerator(vertx, "localhost", RestService.HTTP_SERVER_PORT, 200, 8, 5,
+                Map.of(Route.REGISTER, 1, Route.LOGIN, 1, Route.SAVE_ITEM, 1, Route.GET_ITEMS, 1));
+
+        //when
+        generator.prepare()
+                .compose(v -> generator.run(Duration.ofMillis(200), Duration.ofSeconds(1)))
+                .onComplete(testContext.succeeding(v -> testContext.verify(() -> {
+                    //then
+                    long total = 0;
+                    for (Route route : Route.values()) {
+                        assertTrue(generator.getLatency(route).getTotalCount() > 0, route + " not recorded");
+                        assertEquals(0, generator.getErrors(route), route + " failed");
+                        total += generator.getLatency(route).getTotalCount();
+                    }
+                    assertEquals(200, total);
+                    assertTrue(generator.report().contains("GET /items"));
+                    testContext.completeNow();
+                })));
+    }
+}
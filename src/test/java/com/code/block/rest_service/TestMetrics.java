@@ -0,0 +1,178 @@
+package com.code.block.rest_service;
+
+import com.code.block.rest_service.metrics.LatencyHistogram;
+import com.code.block.rest_service.metrics.Metrics;
+import com.code.block.rest_service.repository.InMemoryStorage;
+import com.code.block.rest_service.repository.MeteredStorage;
+import com.code.block.rest_service.repository.Storage;
+import com.code.block.rest_service.service.AdmissionControl;
+import com.code.block.rest_service.service.HealthCheck;
+import com.code.block.rest_service.service.ItemFeed;
+import com.code.block.rest_service.service.PasswordHasher;
+import com.code.block.rest_service.service.RestRouter;
+import com.code.block.rest_service.service.RestService;
+import com.code.block.rest_service.service.TitleSearch;
+import com.code.block.rest_service.service.TokenIssuer;
+import com.code.block.rest_service.service.TokenRevocations;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.auth.JWTOptions;
+import io.vertx.ext.auth.PubSecKeyOptions;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.ext.web.handler.impl.JWTAuthHandlerImpl;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+class TestMetrics {
+
+    Metrics metrics;
+
+    @BeforeEach
+    void setup(Vertx vertx, VertxTestContext testContext) {
+        metrics = new Metrics(true, 0, 0);
+        metrics.registerStats("component", () -> new JsonObject().put("queueDepth", 3).put("name", "ignored"));
+        JWTAuth jwtProvider = JWTAuth.create(vertx, new JWTAuthOptions()
+                .addPubSecKey(new PubSecKeyOptions().setAlgorithm("HS256").setBuffer("secret")));
+        Storage storage = new MeteredStorage(new InMemoryStorage(), metrics);
+        RestRouter restRouter = new RestRouter(new JWTAuthHandlerImpl(jwtProvider, null),
+                new TokenIssuer(vertx, jwtProvider, new JWTOptions(), 1, 10, metrics.jwtSign()),
+                new PasswordHasher(vertx, 1, 10, 1, 1_000), storage, metrics, AdmissionControl.unlimited(),
+                HealthCheck.alwaysReady(), new TokenRevocations(null, storage, 100, 0.01, 0),
+                new ItemFeed(null, 10, 10, 65_536, 0), new TitleSearch(storage, 1_000, 1_000));
+        vertx.deployVerticle(new RestService(restRouter), testContext.succeeding(id -> testContext.completeNow()));
+    }
+
+    @Test
+    void shouldRenderCumulativeBuckets() {
+        //given
+        LatencyHistogram histogram = metrics.jwtSign().getLatency();
+
+        //when
+        histogram.record(500_000);
+        histogram.record(2_000_000);
+        histogram.record(60_000_000_000L);
+        String rendered = metrics.render();
+
+        //then
+        assertEquals(3, histogram.count());
+        assertTrue(rendered.contains("rest_jwt_duration_seconds_bucket{operation=\"sign\",le=\"0.0005\"} 1\n"));
+        assertTrue(rendered.contains("rest_jwt_duration_seconds_bucket{operation=\"sign\",le=\"0.0025\"} 2\n"));
+        assertTrue(rendered.contains("rest_jwt_duration_seconds_bucket{operation=\"sign\",le=\"10\"} 2\n"));
+        assertTrue(rendered.contains("rest_jwt_duration_seconds_bucket{operation=\"sign\",le=\"+Inf\"} 3\n"));
+        assertTrue(rendered.contains("rest_jwt_duration_seconds_sum{operation=\"sign\"} 60.0025\n"));
+    }
+
+    @Test
+    void shouldExposeRequestStorageAndJwtMetrics(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        JsonObject credentials = new JsonObject().put("login", "metrics").put("password", "password");
+
+        //when
+        client.request(HttpMethod.POST, 8888, "localhost", "/register")
+                .compose(req -> req.send(credentials.toBuffer()))
+                .compose(res -> client.request(HttpMethod.POST, 8888, "localhost", "/login"))
+                .compose(req -> req.send(credentials.toBuffer()))
+                .compose(res -> client.request(HttpMethod.GET, 8888, "localhost", "/items"))
+                .compose(req -> req.send())
+                .compose(res -> client.request(HttpMethod.GET, 8888, "localhost", "/metrics"))
+                .compose(req -> req.send().compose(res -> {
+                    assertEquals(200, res.statusCode());
+                    assertEquals(Metrics.CONTENT_TYPE, res.getHeader("Content-Type"));
+                    return res.body();
+                }))
+                .onComplete(testContext.succeeding(body -> testContext.verify(() -> {
+                    //then
+                    String metrics = body.toString();
+                    assertTrue(metrics.contains("rest_http_requests_total{route=\"/register\",method=\"POST\",status=\"200\"} 1\n"));
+                    assertTrue(metrics.contains("rest_http_requests_total{route=\"/login\",method=\"POST\",status=\"200\"} 1\n"));
+                    assertTrue(metrics.contains("rest_http_requests_total{route=\"/items\",method=\"GET\",status=\"403\"} 1\n"));
+                    assertTrue(metrics.contains("rest_http_request_duration_seconds_count{route=\"/login\",method=\"POST\"} 1\n"));
+                    assertTrue(metrics.contains("rest_http_requests_in_flight 1\n"));
+                    assertTrue(metrics.contains("rest_storage_duration_seconds_count{operation=\"saveUser\"} 1\n"));
+                    assertTrue(metrics.contains("rest_storage_duration_seconds_count{operation=\"getUser\"} 1\n"));
+                    assertTrue(metrics.contains("rest_jwt_duration_seconds_count{operation=\"sign\"} 1\n"));
+                    assertTrue(metrics.contains("rest_jwt_errors_total{operation=\"verify\"} 1\n"));
+                    assertTrue(metrics.contains("rest_component_queue_depth 3\n"));
+                    assertTrue(metrics.contains("# TYPE rest_event_loop_lag_seconds histogram\n"));
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldRecordCancelledStreamOnce() {
+        //given
+        Storage storage = Mockito.mock(Storage.class);
+        ReadStream<JsonObject> source = Mockito.mock(ReadStream.class);
+        Mockito.when(storage.streamTitles("1111", 1)).thenReturn(source);
+        ArgumentCaptor<Handler<Void>> endHandler = ArgumentCaptor.forClass(Handler.class);
+
+        //when
+        ReadStream<JsonObject> titles = new MeteredStorage(storage, metrics).streamTitles("1111", 1);
+        titles.endHandler(v -> { });
+        titles.handler(null);
+        Mockito.verify(source).endHandler(endHandler.capture());
+        endHandler.getValue().handle(null);
+
+        //then
+        String rendered = metrics.render();
+        assertTrue(rendered.contains("rest_storage_duration_seconds_count{operation=\"streamTitles\"} 1\n"), rendered);
+    }
+
+    @Test
+    void shouldCountNonStandardMethodsUnderOneSeries(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+
+        //when
+        client.request(HttpMethod.valueOf("BREW"), 8888, "localhost", "/items")
+                .compose(req -> req.send())
+                .compose(res -> client.request(HttpMethod.valueOf("PURGE"), 8888, "localhost", "/items"))
+                .compose(req -> req.send())
+                .onComplete(testContext.succeeding(res -> testContext.verify(() -> {
+                    //then
+                    String rendered = metrics.render();
+                    assertTrue(rendered.contains("method=\"OTHER\"} 2\n"), rendered);
+                    assertFalse(rendered.contains("BREW"));
+                    assertFalse(rendered.contains("PURGE"));
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldReportPhasesInServerTimingHeader(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        JsonObject credentials = new JsonObject().put("login", "timing").put("password", "password");
+
+        //when
+        client.request(HttpMethod.POST, 8888, "localhost", "/register")
+                .compose(req -> req.send(credentials.toBuffer()))
+                .compose(res -> client.request(HttpMethod.POST, 8888, "localhost", "/login"))
+                .compose(req -> req.send(credentials.toBuffer()))
+                .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+                    //then
+                    String serverTiming = response.getHeader(Metrics.SERVER_TIMING_HEADER);
+                    assertEquals(200, response.statusCode());
+                    assertTrue(serverTiming.matches("body;dur=[0-9.]+, validation;dur=[0-9.]+, hash;dur=[0-9.]+, "
+                            + "storage;dur=[0-9.]+, sign;dur=[0-9.]+, total;dur=[0-9.]+"), serverTiming);
+                    testContext.completeNow();
+                })));
+    }
+}
@@ -1,13 +1,23 @@
 package com.code.block.rest_service;
 
+import com.code.block.rest_service.metrics.Metrics;
 import com.code.block.rest_service.model.User;
-import com.code.block.rest_service.repository.MongoDao;
+import com.code.block.rest_service.repository.LoginAlreadyPresentException;
+import com.code.block.rest_service.repository.Storage;
+import com.code.block.rest_service.service.AdmissionControl;
+import com.code.block.rest_service.service.HealthCheck;
+import com.code.block.rest_service.service.ItemFeed;
+import com.code.block.rest_service.service.PasswordHasher;
 import com.code.block.rest_service.service.RestRouter;
 import com.code.block.rest_service.service.RestService;
+import com.code.block.rest_service.service.TitleSearch;
+import com.code.block.rest_service.service.TokenIssuer;
+import com.code.block.rest_service.service.TokenRevocations;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpClient;
 import io.vertx.core.http.HttpMethod;
+import io.vertx.ext.auth.JWTOptions;
 import io.vertx.ext.auth.KeyStoreOptions;
 import io.vertx.ext.auth.jwt.JWTAuth;
 import io.vertx.ext.auth.jwt.JWTAuthOptions;
@@ -29,17 +39,24 @@ import java.util.Optional;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 
 @ExtendWith(VertxExtension.class)
 @ExtendWith(MockitoExtension.class)
 class TestRestService {
 
     @Mock
-    MongoDao mongoDao;
+    Storage storage;
+
+    PasswordHasher passwordHasher;
 
     @BeforeEach
     void setup(Vertx vertx, VertxTestContext testContext) {
-        RestRouter restRouter = new RestRouter(getJwtHandler(), getJwtProvider(), mongoDao);
+        passwordHasher = new PasswordHasher(vertx, 1, 10, 1, 1_000);
+        RestRouter restRouter = new RestRouter(getJwtHandler(), new TokenIssuer(vertx, getJwtProvider(), new JWTOptions(), 1, 10),
+                passwordHasher, storage, new Metrics(), AdmissionControl.unlimited(), HealthCheck.alwaysReady(),
+                new TokenRevocations(null, storage, 100, 0.01, 0), new ItemFeed(null, 10, 10, 65_536, 0),
+                new TitleSearch(storage, 1_000, 1_000));
         RestService restService = new RestService(restRouter);
         vertx.deployVerticle(restService, testContext.succeeding(id -> testContext.completeNow()));
     }
@@ -59,6 +76,41 @@ class TestRestService {
                 .onComplete(testContext.succeeding(buffer -> testContext.verify(testContext::completeNow)));
     }
 
+    @Test
+    void shouldRejectOversizedLoginBeforeReadingIt(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        String body = "{\"login\": \"" + "a".repeat(2_000) + "\", \"password\": \"password\"}";
+
+        //then
+        client.request(HttpMethod.POST, 8888, "localhost", "/login")
+                .compose(req -> req.send(body).compose(response -> {
+                    assertEquals(413, response.statusCode());
+                    return Future.succeededFuture(response.statusMessage());
+                }))
+                .onComplete(testContext.succeeding(buffer -> testContext.verify(testContext::completeNow)));
+    }
+
+    @Test
+    void shouldRejectStreamedBodyGrowingPastLimit(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        String chunk = "a".repeat(800);
+
+        //then
+        client.request(HttpMethod.POST, 8888, "localhost", "/register")
+                .compose(req -> {
+                    req.setChunked(true).write("{\"login\": \"" + chunk);
+                    req.write(chunk);
+                    return req.end(chunk + "\"}").compose(v -> req.response());
+                })
+                .compose(response -> {
+                    assertEquals(413, response.statusCode());
+                    return Future.succeededFuture(response.statusMessage());
+                })
+                .onComplete(testContext.succeeding(buffer -> testContext.verify(testContext::completeNow)));
+    }
+
     @ParameterizedTest
     @CsvSource({
             "userr, password, /register",
@@ -90,7 +142,7 @@ class TestRestService {
         HttpClient client = vertx.createHttpClient();
 
         //when
-        Mockito.when(mongoDao.isLoginPresent(any())).thenReturn(Future.succeededFuture(true));
+        Mockito.when(storage.saveUser(any())).thenReturn(Future.failedFuture(new LoginAlreadyPresentException()));
 
         //then
         client.request(HttpMethod.POST, 8888, "localhost", "/register")
@@ -108,8 +160,7 @@ class TestRestService {
         HttpClient client = vertx.createHttpClient();
 
         //when
-        Mockito.when(mongoDao.isLoginPresent(any())).thenReturn(Future.succeededFuture(Boolean.FALSE));
-        Mockito.when(mongoDao.saveUser(any())).thenReturn(Future.succeededFuture());
+        Mockito.when(storage.saveUser(argThat(user -> PasswordHasher.isHash(user.getString("password"))))).thenReturn(Future.succeededFuture());
 
         //then
         client.request(HttpMethod.POST, 8888, "localhost", "/register")
@@ -127,13 +178,14 @@ class TestRestService {
         HttpClient client = vertx.createHttpClient();
 
         //when
-        Mockito.when(mongoDao.getUser(any(), any())).thenReturn(Future.succeededFuture(Optional.empty()));
+        Mockito.when(storage.getUser(any())).thenReturn(Future.succeededFuture(Optional.empty()));
 
         //then
         client.request(HttpMethod.POST, 8888, "localhost", "/login")
                 .compose(req -> req.send("{\"login\": \"user\", \"password\": \"pass\"}").compose(response -> {
                     assertEquals(500, response.statusCode());
                     assertEquals("Error while logging: User login or password incorrect", response.statusMessage());
+                    assertEquals(1, passwordHasher.stats().getLong("hashes"));
                     return Future.succeededFuture(response.statusMessage());
                 }))
                 .onComplete(testContext.succeeding(buffer -> testContext.verify(testContext::completeNow)));
@@ -144,11 +196,13 @@ class TestRestService {
         //given
         HttpClient client = vertx.createHttpClient();
 
-        //when
-        Mockito.when(mongoDao.getUser(any(), any())).thenReturn(Future.succeededFuture(Optional.of(User.builder().login("login").password("password").id("777").build())));
-
         //then
-        client.request(HttpMethod.POST, 8888, "localhost", "/login")
+        passwordHasher.hash("pass")
+                .compose(hash -> {
+                    //when
+                    Mockito.when(storage.getUser(any())).thenReturn(Future.succeededFuture(Optional.of(User.builder().login("login").password(hash).id("777").build())));
+                    return client.request(HttpMethod.POST, 8888, "localhost", "/login");
+                })
                 .compose(req -> req.send("{\"login\": \"user\", \"password\": \"pass\"}").compose(response -> {
                     assertEquals(200, response.statusCode());
                     assertEquals("Token obtained successfully", response.statusMessage());
@@ -161,6 +215,26 @@ class TestRestService {
                 }));
     }
 
+    @Test
+    void shouldNotLoginWithWrongPassword(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+
+        //then
+        passwordHasher.hash("password")
+                .compose(hash -> {
+                    //when
+                    Mockito.when(storage.getUser(any())).thenReturn(Future.succeededFuture(Optional.of(User.builder().login("login").password(hash).id("777").build())));
+                    return client.request(HttpMethod.POST, 8888, "localhost", "/login");
+                })
+                .compose(req -> req.send("{\"login\": \"user\", \"password\": \"pass\"}").compose(response -> {
+                    assertEquals(500, response.statusCode());
+                    assertEquals("Error while logging: User login or password incorrect", response.statusMessage());
+                    return Future.succeededFuture(response.statusMessage());
+                }))
+                .onComplete(testContext.succeeding(buffer -> testContext.verify(testContext::completeNow)));
+    }
+
     @ParameterizedTest
     @ValueSource(strings = {"POST", "GET"})
     void shouldNotSaveOrGetItemsWhenUnauthenticated(String httpMethod, Vertx vertx, VertxTestContext testContext) {
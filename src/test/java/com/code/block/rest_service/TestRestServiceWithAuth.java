@@ -1,17 +1,31 @@
 package com.code.block.rest_service;
 
-import com.code.block.rest_service.repository.MongoDao;
+import com.code.block.rest_service.metrics.Metrics;
+import com.code.block.rest_service.model.User;
+import com.code.block.rest_service.repository.ListReadStream;
+import com.code.block.rest_service.repository.Storage;
+import com.code.block.rest_service.repository.StorageGuard;
+import com.code.block.rest_service.service.AdmissionControl;
+import com.code.block.rest_service.service.HealthCheck;
+import com.code.block.rest_service.service.ItemFeed;
+import com.code.block.rest_service.service.PasswordHasher;
 import com.code.block.rest_service.service.RestRouter;
 import com.code.block.rest_service.service.RestService;
+import com.code.block.rest_service.service.TitleSearch;
+import com.code.block.rest_service.service.TokenIssuer;
+import com.code.block.rest_service.service.TokenRevocations;
+import com.code.block.rest_service.utils.MediaFormat;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.auth.impl.UserImpl;
-import io.vertx.ext.auth.jwt.JWTAuth;
 import io.vertx.ext.web.handler.impl.JWTAuthHandlerImpl;
 import io.vertx.junit5.VertxExtension;
 import io.vertx.junit5.VertxTestContext;
@@ -19,32 +33,46 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 
 @ExtendWith(VertxExtension.class)
 @ExtendWith(MockitoExtension.class)
 class TestRestServiceWithAuth {
 
     @Mock
-    MongoDao mongoDao;
+    Storage storage;
     @Mock
-    JWTAuth authProvider;
+    TokenIssuer tokenIssuer;
+    @Mock
+    PasswordHasher passwordHasher;
     @Mock
     JWTAuthHandlerImpl authHandler;
 
     @BeforeEach
     void setup(Vertx vertx, VertxTestContext testContext) {
-        RestRouter restRouter = new RestRouter(authHandler, authProvider, mongoDao);
+        RestRouter restRouter = new RestRouter(authHandler, tokenIssuer, passwordHasher, storage, new Metrics(),
+                AdmissionControl.unlimited(), HealthCheck.alwaysReady(),
+                new TokenRevocations(null, storage, 100, 0.01, 0), new ItemFeed(null, 10, 10, 65_536, 0),
+                new TitleSearch(storage, 1_000, 1_000));
         RestService restService = new RestService(restRouter);
         vertx.deployVerticle(restService, testContext.succeeding(id -> testContext.completeNow()));
     }
@@ -122,7 +150,7 @@ class TestRestServiceWithAuth {
         HttpClient client = vertx.createHttpClient();
 
         //when
-        Mockito.when(mongoDao.saveTitle(any())).thenReturn(Future.succeededFuture());
+        Mockito.when(storage.saveTitle(any())).thenReturn(Future.succeededFuture());
 
         Mockito.doAnswer(invocation -> {
             Handler<AsyncResult<UserImpl>> handler = invocation.getArgument(1);
@@ -140,6 +168,30 @@ class TestRestServiceWithAuth {
                 .onComplete(testContext.succeeding(buffer -> testContext.verify(testContext::completeNow)));
     }
 
+    @Test
+    void shouldAnswerServiceUnavailableWhenStorageRejects(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+
+        //when
+        Mockito.when(storage.saveTitle(any())).thenReturn(Future.failedFuture(new RejectedExecutionException("Storage titles is unavailable")));
+
+        Mockito.doAnswer(invocation -> {
+            Handler<AsyncResult<UserImpl>> handler = invocation.getArgument(1);
+            handler.handle(Future.succeededFuture(new UserImpl(new JsonObject().put("_id", "111"), new JsonObject())));
+            return null;
+        }).when(authHandler).authenticate(Mockito.any(), Mockito.any());
+
+        //then
+        client.request(HttpMethod.POST, 8888, "localhost", "/items")
+                .compose(req -> req.send("{\"title\": \"title22\"}").compose(response -> {
+                    assertEquals(503, response.statusCode());
+                    assertEquals("1", response.getHeader("Retry-After"));
+                    return Future.succeededFuture(response.statusMessage());
+                }))
+                .onComplete(testContext.succeeding(buffer -> testContext.verify(testContext::completeNow)));
+    }
+
     @Test
     void shouldGetItems(Vertx vertx, VertxTestContext testContext) {
         //given
@@ -147,7 +199,8 @@ class TestRestServiceWithAuth {
         List<JsonObject> itemsList = Arrays.asList(new JsonObject().put("_id", "111").put("title", "title1"), new JsonObject().put("_id", "112").put("title", "title2"));
 
         //when
-        Mockito.when(mongoDao.getTitles(any())).thenReturn(Future.succeededFuture(itemsList));
+        Mockito.when(storage.getTitlesVersion(any())).thenReturn(Future.succeededFuture(1L));
+        Mockito.when(storage.streamTitles(any(), anyLong())).thenReturn(new ListReadStream<>(itemsList));
 
         Mockito.doAnswer(invocation -> {
             Handler<AsyncResult<UserImpl>> handler = invocation.getArgument(1);
@@ -163,9 +216,451 @@ class TestRestServiceWithAuth {
                     return response.body();
                 }))
                 .onComplete(testContext.succeeding(body -> {
-                    assertNotNull(body.toJsonArray());
+                    assertEquals(2, body.toJsonArray().size());
                     testContext.completeNow();
                 }));
     }
 
+    @Test
+    void shouldStopReadingItemsWhenClientGoesAway(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        StorageGuard guard = new StorageGuard(vertx, "titles", 10, 0, 5, 1_000);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        ReadStream<JsonObject> endless = new ListReadStream<JsonObject>(List.of(new JsonObject().put("_id", "111"))) {
+            @Override
+            public ReadStream<JsonObject> handler(Handler<JsonObject> handler) {
+                cancelled.set(handler == null);
+                return handler == null ? this : super.handler(handler);
+            }
+
+            @Override
+            public ReadStream<JsonObject> endHandler(Handler<Void> endHandler) {
+                return this;
+            }
+        };
+
+        //when
+        Mockito.when(storage.getTitlesVersion(any())).thenReturn(Future.succeededFuture(1L));
+        Mockito.when(storage.streamTitles(any(), anyLong())).thenReturn(guard.stream(() -> endless));
+
+        Mockito.doAnswer(invocation -> {
+            Handler<AsyncResult<UserImpl>> handler = invocation.getArgument(1);
+            handler.handle(Future.succeededFuture(new UserImpl(new JsonObject().put("_id", "1111"), new JsonObject())));
+            return null;
+        }).when(authHandler).authenticate(Mockito.any(), Mockito.any());
+
+        //then
+        client.request(HttpMethod.GET, 8888, "localhost", "/items")
+                .compose(req -> req.send().compose(response -> {
+                    assertEquals(200, response.statusCode());
+                    return req.connection().close();
+                }))
+                .onComplete(testContext.succeeding(v -> vertx.setTimer(100, id -> testContext.verify(() -> {
+                    assertTrue(cancelled.get());
+                    assertEquals(0, guard.stats().getInteger("inFlight"));
+                    testContext.completeNow();
+                }))));
+    }
+
+    @Test
+    void shouldGetItemsPage(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        List<JsonObject> itemsList = Arrays.asList(new JsonObject().put("_id", "111").put("title", "title1"), new JsonObject().put("_id", "112").put("title", "title2"));
+
+        //when
+        Mockito.when(storage.getTitlesVersion(any())).thenReturn(Future.succeededFuture(1L));
+        Mockito.when(storage.getTitles(eq("1111"), eq("110"), eq(2))).thenReturn(Future.succeededFuture(itemsList));
+
+        Mockito.doAnswer(invocation -> {
+            Handler<AsyncResult<UserImpl>> handler = invocation.getArgument(1);
+            handler.handle(Future.succeededFuture(new UserImpl(new JsonObject().put("_id", "1111"), new JsonObject())));
+            return null;
+        }).when(authHandler).authenticate(Mockito.any(), Mockito.any());
+
+        //then
+        String after = Base64.getUrlEncoder().withoutPadding().encodeToString("110".getBytes(StandardCharsets.UTF_8));
+        client.request(HttpMethod.GET, 8888, "localhost", "/items?limit=1&after=" + after)
+                .compose(req -> req.send().compose(response -> {
+                    assertEquals(200, response.statusCode());
+                    assertEquals("MTEx", response.getHeader("Next-Cursor"));
+                    return response.body();
+                }))
+                .onComplete(testContext.succeeding(body -> testContext.verify(() -> {
+                    assertEquals(1, body.toJsonArray().size());
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldAnswerNotModifiedWithoutReadingItems(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        List<JsonObject> itemsList = Arrays.asList(new JsonObject().put("_id", "111").put("title", "title1"));
+
+        //when
+        Mockito.when(storage.getTitlesVersion(eq("1111"))).thenReturn(Future.succeededFuture(7L));
+        Mockito.when(storage.streamTitles(any(), anyLong())).thenReturn(new ListReadStream<>(itemsList));
+
+        Mockito.doAnswer(invocation -> {
+            Handler<AsyncResult<UserImpl>> handler = invocation.getArgument(1);
+            handler.handle(Future.succeededFuture(new UserImpl(new JsonObject().put("_id", "1111"), new JsonObject())));
+            return null;
+        }).when(authHandler).authenticate(Mockito.any(), Mockito.any());
+
+        //then
+        client.request(HttpMethod.GET, 8888, "localhost", "/items")
+                .compose(req -> req.send())
+                .compose(response -> {
+                    assertEquals(200, response.statusCode());
+                    String etag = response.getHeader(HttpHeaders.ETAG);
+                    return client.request(HttpMethod.GET, 8888, "localhost", "/items")
+                            .compose(req -> req.putHeader(HttpHeaders.IF_NONE_MATCH, "W/\"other\", " + etag).send());
+                })
+                .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+                    assertEquals(304, response.statusCode());
+                    assertEquals("W/\"7-json\"", response.getHeader(HttpHeaders.ETAG));
+                    Mockito.verify(storage, Mockito.times(1)).streamTitles(any(), anyLong());
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldTagEachPageAndFormatSeparately(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        List<JsonObject> itemsList = Arrays.asList(new JsonObject().put("_id", "111").put("title", "title1"));
+
+        //when
+        Mockito.when(storage.getTitlesVersion(eq("1111"))).thenReturn(Future.succeededFuture(7L));
+        Mockito.when(storage.getTitles(eq("1111"), eq(null), eq(3))).thenReturn(Future.succeededFuture(itemsList));
+
+        Mockito.doAnswer(invocation -> {
+            Handler<AsyncResult<UserImpl>> handler = invocation.getArgument(1);
+            handler.handle(Future.succeededFuture(new UserImpl(new JsonObject().put("_id", "1111"), new JsonObject())));
+            return null;
+        }).when(authHandler).authenticate(Mockito.any(), Mockito.any());
+
+        //then
+        client.request(HttpMethod.GET, 8888, "localhost", "/items?limit=2")
+                .compose(req -> req.putHeader(HttpHeaders.IF_NONE_MATCH, "W/\"7-json\"")
+                        .putHeader(HttpHeaders.ACCEPT, MediaFormat.CBOR.getContentType())
+                        .send())
+                .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+                    assertEquals(200, response.statusCode());
+                    assertEquals("W/\"7-cbor-2\"", response.getHeader(HttpHeaders.ETAG));
+                    assertEquals("private, no-cache", response.getHeader(HttpHeaders.CACHE_CONTROL));
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldSearchItems(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        List<JsonObject> itemsList = Arrays.asList(new JsonObject().put("_id", "111").put("title", "Green apples"),
+                new JsonObject().put("_id", "112").put("title", "Red apples"));
+
+        //when
+        Mockito.when(storage.getTitlesVersion(eq("1111"))).thenReturn(Future.succeededFuture(1L));
+        Mockito.when(storage.getTitles(eq("1111"), eq(1L))).thenReturn(Future.succeededFuture(itemsList));
+
+        Mockito.doAnswer(invocation -> {
+            Handler<AsyncResult<UserImpl>> handler = invocation.getArgument(1);
+            handler.handle(Future.succeededFuture(new UserImpl(new JsonObject().put("_id", "1111"), new JsonObject())));
+            return null;
+        }).when(authHandler).authenticate(Mockito.any(), Mockito.any());
+
+        //then
+        client.request(HttpMethod.GET, 8888, "localhost", "/items?q=gree")
+                .compose(req -> req.send().compose(response -> {
+                    assertEquals(200, response.statusCode());
+                    return response.body();
+                }))
+                .onComplete(testContext.succeeding(body -> testContext.verify(() -> {
+                    assertEquals(1, body.toJsonArray().size());
+                    assertEquals("Green apples", body.toJsonArray().getJsonObject(0).getString("title"));
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldRejectPagedSearch(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+
+        //when
+        Mockito.doAnswer(invocation -> {
+            Handler<AsyncResult<UserImpl>> handler = invocation.getArgument(1);
+            handler.handle(Future.succeededFuture(new UserImpl(new JsonObject().put("_id", "1111"), new JsonObject())));
+            return null;
+        }).when(authHandler).authenticate(Mockito.any(), Mockito.any());
+
+        //then
+        client.request(HttpMethod.GET, 8888, "localhost", "/items?q=title&after=MTEw")
+                .compose(req -> req.send().compose(response -> {
+                    assertEquals(400, response.statusCode());
+                    assertEquals("Search results cannot be paged with after, raise the limit instead", response.statusMessage());
+                    return Future.succeededFuture(response.statusMessage());
+                }))
+                .onComplete(testContext.succeeding(buffer -> testContext.verify(() -> {
+                    Mockito.verifyNoInteractions(storage);
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldRejectInvalidPageLimit(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+
+        //when
+        Mockito.doAnswer(invocation -> {
+            Handler<AsyncResult<UserImpl>> handler = invocation.getArgument(1);
+            handler.handle(Future.succeededFuture(new UserImpl(new JsonObject().put("_id", "1111"), new JsonObject())));
+            return null;
+        }).when(authHandler).authenticate(Mockito.any(), Mockito.any());
+
+        //then
+        client.request(HttpMethod.GET, 8888, "localhost", "/items?limit=0")
+                .compose(req -> req.send().compose(response -> {
+                    assertEquals(400, response.statusCode());
+                    assertEquals("Limit must be between 1 and 1000", response.statusMessage());
+                    return Future.succeededFuture(response.statusMessage());
+                }))
+                .onComplete(testContext.succeeding(buffer -> testContext.verify(testContext::completeNow)));
+    }
+
+    @Test
+    void shouldImportItemsInBatches(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 1200; i++) {
+            body.append("{\"title\": \"title").append(i).append("\"}\n");
+        }
+        body.append("{\"wrongField\": \"title\"}\nnot json\n");
+
+        //when
+        Mockito.when(storage.saveTitles(any())).thenAnswer(invocation -> {
+            List<JsonObject> titles = invocation.getArgument(0);
+            return Future.succeededFuture((long) titles.size());
+        });
+
+        Mockito.doAnswer(invocation -> {
+            Handler<AsyncResult<UserImpl>> handler = invocation.getArgument(1);
+            handler.handle(Future.succeededFuture(new UserImpl(new JsonObject().put("_id", "1111"), new JsonObject())));
+            return null;
+        }).when(authHandler).authenticate(Mockito.any(), Mockito.any());
+
+        //then
+        client.request(HttpMethod.POST, 8888, "localhost", "/items/import")
+                .compose(req -> req.send(body.toString()).compose(response -> {
+                    assertEquals(200, response.statusCode());
+                    assertEquals("Items imported", response.statusMessage());
+                    return response.body();
+                }))
+                .onComplete(testContext.succeeding(summary -> testContext.verify(() -> {
+                    JsonObject result = summary.toJsonObject();
+                    assertEquals(1200, result.getLong("inserted"));
+                    assertEquals(2, result.getLong("failed"));
+                    assertEquals(3, result.getJsonArray("batches").size());
+                    assertEquals(2, result.getJsonArray("errors").size());
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldImportLastLineWithoutTrailingNewline(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        String body = "{\"title\": \"first\"}\n{\"title\": \"last\"}";
+
+        //when
+        Mockito.when(storage.saveTitles(any())).thenAnswer(invocation -> {
+            List<JsonObject> titles = invocation.getArgument(0);
+            return Future.succeededFuture((long) titles.size());
+        });
+
+        Mockito.doAnswer(invocation -> {
+            Handler<AsyncResult<UserImpl>> handler = invocation.getArgument(1);
+            handler.handle(Future.succeededFuture(new UserImpl(new JsonObject().put("_id", "1111"), new JsonObject())));
+            return null;
+        }).when(authHandler).authenticate(Mockito.any(), Mockito.any());
+
+        //then
+        client.request(HttpMethod.POST, 8888, "localhost", "/items/import")
+                .compose(req -> req.send(body).compose(response -> {
+                    assertEquals(200, response.statusCode());
+                    return response.body();
+                }))
+                .onComplete(testContext.succeeding(summary -> testContext.verify(() -> {
+                    JsonObject result = summary.toJsonObject();
+                    assertEquals(2, result.getLong("inserted"));
+                    assertEquals(0, result.getLong("failed"));
+                    Mockito.verify(storage).saveTitles(argThat(titles -> titles.size() == 2
+                            && "last".equals(titles.get(1).getString("title"))));
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldExportItemsAsNdjson(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        List<JsonObject> itemsList = Arrays.asList(new JsonObject().put("_id", "111").put("title", "title1"), new JsonObject().put("_id", "112").put("title", "title2"));
+
+        //when
+        Mockito.when(storage.getTitlesVersion(eq("1111"))).thenReturn(Future.succeededFuture(3L));
+        Mockito.when(storage.streamTitles(eq("1111"), eq(3L))).thenReturn(new ListReadStream<>(itemsList));
+
+        Mockito.doAnswer(invocation -> {
+            Handler<AsyncResult<UserImpl>> handler = invocation.getArgument(1);
+            handler.handle(Future.succeededFuture(new UserImpl(new JsonObject().put("_id", "1111"), new JsonObject())));
+            return null;
+        }).when(authHandler).authenticate(Mockito.any(), Mockito.any());
+
+        //then
+        client.request(HttpMethod.GET, 8888, "localhost", "/items/export")
+                .compose(req -> req.send().compose(response -> {
+                    assertEquals(200, response.statusCode());
+                    assertEquals("application/x-ndjson", response.getHeader("Content-Type"));
+                    return response.body();
+                }))
+                .onComplete(testContext.succeeding(body -> testContext.verify(() -> {
+                    String[] lines = body.toString().split("\n");
+                    assertEquals(2, lines.length);
+                    assertEquals("title2", new JsonObject(lines[1]).getString("title"));
+                    testContext.completeNow();
+                })));
+    }
+
+    @ParameterizedTest
+    @EnumSource(MediaFormat.class)
+    void shouldGetItemsInAcceptedFormat(MediaFormat format, Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        List<JsonObject> itemsList = Arrays.asList(new JsonObject().put("_id", "111").put("title", "title1"), new JsonObject().put("_id", "112").put("title", "title2"));
+
+        //when
+        Mockito.when(storage.getTitlesVersion(any())).thenReturn(Future.succeededFuture(1L));
+        Mockito.when(storage.streamTitles(any(), anyLong())).thenReturn(new ListReadStream<>(itemsList));
+
+        Mockito.doAnswer(invocation -> {
+            Handler<AsyncResult<UserImpl>> handler = invocation.getArgument(1);
+            handler.handle(Future.succeededFuture(new UserImpl(new JsonObject().put("_id", "1111"), new JsonObject())));
+            return null;
+        }).when(authHandler).authenticate(Mockito.any(), Mockito.any());
+
+        //then
+        client.request(HttpMethod.GET, 8888, "localhost", "/items")
+                .compose(req -> req.putHeader(HttpHeaders.ACCEPT, "application/json;q=0.5, " + format.getContentType())
+                        .send().compose(response -> {
+                            assertEquals(200, response.statusCode());
+                            assertEquals(format.getContentType(), response.getHeader("Content-Type"));
+                            assertEquals("Accept", response.getHeader("Vary"));
+                            return response.body();
+                        }))
+                .onComplete(testContext.succeeding(body -> testContext.verify(() -> {
+                    assertEquals(format.encode(itemsList), body);
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldGetItemsPageAsSmile(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        List<JsonObject> itemsList = Arrays.asList(new JsonObject().put("_id", "111").put("title", "title1"));
+
+        //when
+        Mockito.when(storage.getTitlesVersion(any())).thenReturn(Future.succeededFuture(1L));
+        Mockito.when(storage.getTitles(eq("1111"), eq(null), eq(11))).thenReturn(Future.succeededFuture(itemsList));
+
+        Mockito.doAnswer(invocation -> {
+            Handler<AsyncResult<UserImpl>> handler = invocation.getArgument(1);
+            handler.handle(Future.succeededFuture(new UserImpl(new JsonObject().put("_id", "1111"), new JsonObject())));
+            return null;
+        }).when(authHandler).authenticate(Mockito.any(), Mockito.any());
+
+        //then
+        client.request(HttpMethod.GET, 8888, "localhost", "/items?limit=10")
+                .compose(req -> req.putHeader(HttpHeaders.ACCEPT, MediaFormat.SMILE.getContentType()).send().compose(response -> {
+                    assertEquals(200, response.statusCode());
+                    assertEquals(MediaFormat.SMILE.getContentType(), response.getHeader("Content-Type"));
+                    return response.body();
+                }))
+                .onComplete(testContext.succeeding(body -> testContext.verify(() -> {
+                    assertEquals(MediaFormat.SMILE.encode(itemsList), body);
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldSaveCborItem(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        Buffer body = MediaFormat.CBOR.encodeItem(new JsonObject().put("title", "title22"));
+
+        //when
+        Mockito.when(storage.saveTitle(argThat(title -> "title22".equals(title.getString("title"))))).thenReturn(Future.succeededFuture());
+
+        Mockito.doAnswer(invocation -> {
+            Handler<AsyncResult<UserImpl>> handler = invocation.getArgument(1);
+            handler.handle(Future.succeededFuture(new UserImpl(new JsonObject().put("_id", "111"), new JsonObject())));
+            return null;
+        }).when(authHandler).authenticate(Mockito.any(), Mockito.any());
+
+        //then
+        client.request(HttpMethod.POST, 8888, "localhost", "/items")
+                .compose(req -> req.putHeader(HttpHeaders.CONTENT_TYPE, MediaFormat.CBOR.getContentType()).send(body).compose(response -> {
+                    assertEquals(204, response.statusCode());
+                    return Future.succeededFuture(response.statusMessage());
+                }))
+                .onComplete(testContext.succeeding(buffer -> testContext.verify(testContext::completeNow)));
+    }
+
+    @Test
+    void shouldRejectUnsupportedItemContentType(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+
+        //when
+        Mockito.doAnswer(invocation -> {
+            Handler<AsyncResult<UserImpl>> handler = invocation.getArgument(1);
+            handler.handle(Future.succeededFuture(new UserImpl(new JsonObject().put("_id", "111"), new JsonObject())));
+            return null;
+        }).when(authHandler).authenticate(Mockito.any(), Mockito.any());
+
+        //then
+        client.request(HttpMethod.POST, 8888, "localhost", "/items")
+                .compose(req -> req.putHeader(HttpHeaders.CONTENT_TYPE, "application/xml").send("<title/>").compose(response -> {
+                    assertEquals(415, response.statusCode());
+                    assertEquals("Unsupported content type", response.statusMessage());
+                    return Future.succeededFuture(response.statusMessage());
+                }))
+                .onComplete(testContext.succeeding(buffer -> testContext.verify(testContext::completeNow)));
+    }
+
+    @Test
+    void shouldRejectLoginWhenSigningQueueIsFull(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+
+        //when
+        Mockito.when(storage.getUser(any())).thenReturn(Future.succeededFuture(Optional.of(User.builder().login("login").password("pbkdf2-sha256$1$c2FsdA$aGFzaA").id("777").build())));
+        Mockito.when(passwordHasher.verify(any(), any())).thenReturn(Future.succeededFuture(true));
+        Mockito.when(tokenIssuer.issue(any())).thenReturn(Future.failedFuture(new RejectedExecutionException("Token signing queue is full")));
+
+        //then
+        client.request(HttpMethod.POST, 8888, "localhost", "/login")
+                .compose(req -> req.send("{\"login\": \"user\", \"password\": \"pass\"}").compose(response -> {
+                    assertEquals(503, response.statusCode());
+                    assertEquals("Service busy, retry later", response.statusMessage());
+                    return Future.succeededFuture(response.statusMessage());
+                }))
+                .onComplete(testContext.succeeding(buffer -> testContext.verify(testContext::completeNow)));
+    }
+
 }
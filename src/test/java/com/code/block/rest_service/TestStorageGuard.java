@@ -0,0 +1,113 @@
+package com.code.block.rest_service;
+
+import com.code.block.rest_service.repository.ListReadStream;
+import com.code.block.rest_service.repository.LoginAlreadyPresentException;
+import com.code.block.rest_service.repository.StorageGuard;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+@ExtendWith(VertxExtension.class)
+class TestStorageGuard {
+
+    @Test
+    void shouldFailCallAfterDeadline(Vertx vertx, VertxTestContext testContext) {
+        //given
+        StorageGuard guard = new StorageGuard(vertx, "test", 10, 50, 5, 1_000);
+
+        //when
+        guard.call(() -> Promise.<String>promise().future())
+                .onComplete(testContext.failing(error -> testContext.verify(() -> {
+                    //then
+                    assertInstanceOf(TimeoutException.class, error);
+                    assertEquals(1, guard.stats().getLong("timeouts"));
+                    assertEquals(1, guard.stats().getInteger("inFlight"));
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldRejectCallsAboveInFlightLimit(Vertx vertx, VertxTestContext testContext) {
+        //given
+        StorageGuard guard = new StorageGuard(vertx, "test", 1, 0, 5, 1_000);
+        Promise<String> pending = Promise.promise();
+        guard.call(pending::future);
+
+        //when
+        guard.call(() -> Future.succeededFuture("second"))
+                .onComplete(testContext.failing(error -> testContext.verify(() -> {
+                    //then
+                    assertInstanceOf(RejectedExecutionException.class, error);
+                    assertEquals(1, guard.stats().getLong("rejectedFull"));
+                    pending.complete("first");
+                    assertEquals(0, guard.stats().getInteger("inFlight"));
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldOpenCircuitAndCloseItAfterSuccessfulProbe(Vertx vertx, VertxTestContext testContext) {
+        //given
+        StorageGuard guard = new StorageGuard(vertx, "test", 10, 0, 2, 50);
+        AtomicInteger calls = new AtomicInteger();
+        guard.call(() -> Future.failedFuture(new LoginAlreadyPresentException()));
+        guard.call(() -> Future.failedFuture(new RuntimeException("down")));
+        guard.call(() -> Future.failedFuture(new RuntimeException("down")));
+
+        //when
+        guard.call(() -> {
+                    calls.incrementAndGet();
+                    return Future.succeededFuture("rejected");
+                })
+                .recover(error -> {
+                    assertInstanceOf(RejectedExecutionException.class, error);
+                    assertEquals(StorageGuard.State.OPEN, guard.getState());
+                    assertEquals(0, calls.get());
+                    Promise<String> delay = Promise.promise();
+                    vertx.setTimer(100, id -> delay.complete());
+                    return delay.future();
+                })
+                .compose(v -> guard.call(() -> Future.succeededFuture("probe")))
+                .onComplete(testContext.succeeding(result -> testContext.verify(() -> {
+                    //then
+                    assertEquals("probe", result);
+                    assertEquals(StorageGuard.State.CLOSED, guard.getState());
+                    assertEquals(2, guard.stats().getLong("failures"));
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldProbeAgainWhenProbeStreamIsCancelled(Vertx vertx, VertxTestContext testContext) {
+        //given
+        StorageGuard guard = new StorageGuard(vertx, "test", 10, 0, 1, 50);
+        guard.call(() -> Future.failedFuture(new RuntimeException("down")));
+
+        //when
+        vertx.setTimer(100, id -> {
+            guard.stream(() -> new ListReadStream<>(List.of("item")))
+                    .exceptionHandler(testContext::failNow)
+                    .handler(null);
+            guard.call(() -> Future.succeededFuture("probe"))
+                    .onComplete(testContext.succeeding(result -> testContext.verify(() -> {
+                        //then
+                        assertEquals("probe", result);
+                        assertEquals(StorageGuard.State.CLOSED, guard.getState());
+                        assertEquals(0, guard.stats().getInteger("inFlight"));
+                        testContext.completeNow();
+                    })));
+        });
+    }
+}
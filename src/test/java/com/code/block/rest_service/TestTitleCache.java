@@ -0,0 +1,99 @@
+package com.code.block.rest_service;
+
+import com.code.block.rest_service.repository.ListReadStream;
+import com.code.block.rest_service.repository.TitleCache;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TestTitleCache {
+
+    private final List<JsonObject> titles = Arrays.asList(
+            new JsonObject().put("_id", "111").put("title", "title1"),
+            new JsonObject().put("_id", "112").put("title", "title2"));
+
+    @Test
+    void shouldServeFilledTitlesAndAppendSavedOnes() {
+        //given
+        TitleCache cache = new TitleCache(10, 60_000, 100);
+
+        //when
+        assertNull(cache.get("user", 0));
+        cache.put("user", 0, titles, cache.beginFill("user"));
+        cache.saved("user", new JsonObject().put("_id", "113").put("title", "title3"));
+
+        //then
+        assertEquals(3, cache.get("user", 0).size());
+        assertEquals(1, cache.stats().getLong("hits"));
+        assertEquals(1, cache.stats().getLong("misses"));
+    }
+
+    @Test
+    void shouldNotServeTitlesOlderThanRequestedVersion() {
+        //given
+        TitleCache cache = new TitleCache(10, 60_000, 100);
+
+        //when
+        cache.put("user", 4, titles, cache.beginFill("user"));
+        cache.saved("user", new JsonObject().put("_id", "113").put("title", "title3"));
+
+        //then
+        assertEquals(3, cache.get("user", 5).size());
+        assertNull(cache.get("user", 6));
+        assertNull(cache.get("user", 5));
+    }
+
+    @Test
+    void shouldDropFillStartedBeforeSave() {
+        //given
+        TitleCache cache = new TitleCache(10, 60_000, 100);
+
+        //when
+        Object fill = cache.beginFill("user");
+        cache.saved("user", new JsonObject().put("_id", "113").put("title", "title3"));
+        cache.put("user", 0, titles, fill);
+
+        //then
+        assertNull(cache.get("user", 0));
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedUser() {
+        //given
+        TitleCache cache = new TitleCache(2, 60_000, 100);
+
+        //when
+        cache.put("user1", 0, titles, cache.beginFill("user1"));
+        cache.put("user2", 0, titles, cache.beginFill("user2"));
+        cache.get("user1", 0);
+        cache.put("user3", 0, titles, cache.beginFill("user3"));
+
+        //then
+        assertNull(cache.get("user2", 0));
+        assertEquals(2, cache.get("user1", 0).size());
+        assertEquals(1, cache.stats().getLong("evictions"));
+    }
+
+    @Test
+    void shouldFillFromStreamOnlyBelowItemLimit() {
+        //given
+        TitleCache cache = new TitleCache(10, 60_000, 1);
+        List<JsonObject> streamed = new ArrayList<>();
+
+        //when
+        ReadStream<JsonObject> stream = cache.fill("user", 0, new ListReadStream<>(titles));
+        stream.endHandler(v -> { });
+        stream.handler(streamed::add);
+
+        //then
+        assertEquals(2, streamed.size());
+        assertNull(cache.get("user", 0));
+    }
+}
@@ -0,0 +1,109 @@
+package com.code.block.rest_service;
+
+import com.code.block.rest_service.repository.InMemoryStorage;
+import com.code.block.rest_service.service.TitleSearch;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestTitleSearch {
+
+    private final InMemoryStorage storage = new InMemoryStorage();
+
+    @Test
+    void shouldRankExactWordsFirstThenNewerTitles() {
+        //given
+        TitleSearch search = new TitleSearch(storage, 1_000, 1_000);
+        save("user1", "Green apples");
+        save("user1", "Apple greenhouse");
+        save("user1", "Grey elephant");
+        save("user1", "Crème brûlée");
+
+        //when
+        List<String> both = titlesOf(search.search("user1", TitleSearch.tokenize("GRE app"), 10).result());
+        List<String> exact = titlesOf(search.search("user1", TitleSearch.tokenize("green"), 10).result());
+        List<String> accents = titlesOf(search.search("user1", TitleSearch.tokenize("creme"), 10).result());
+        List<String> none = titlesOf(search.search("user1", TitleSearch.tokenize("gre banana"), 10).result());
+
+        //then
+        assertEquals(List.of("Apple greenhouse", "Green apples"), both);
+        assertEquals(List.of("Green apples", "Apple greenhouse"), exact);
+        assertEquals(List.of("Crème brûlée"), accents);
+        assertTrue(none.isEmpty());
+    }
+
+    @Test
+    void shouldIndexLocalSavesAndRebuildAfterSavesElsewhere() {
+        //given
+        TitleSearch search = new TitleSearch(storage, 1_000, 0);
+        save("user1", "first title");
+        search.search("user1", TitleSearch.tokenize("title"), 10);
+
+        //when
+        search.saved("user1", save("user1", "second title"));
+        List<String> afterLocalSave = titlesOf(search.search("user1", TitleSearch.tokenize("title"), 10).result());
+        long rebuildsAfterLocalSave = search.stats().getLong("rebuilds");
+        save("user1", "third title");
+        List<String> afterRemoteSave = titlesOf(search.search("user1", TitleSearch.tokenize("title"), 10).result());
+
+        //then
+        assertEquals(List.of("second title", "first title"), afterLocalSave);
+        assertEquals(1, rebuildsAfterLocalSave);
+        assertEquals(List.of("third title", "second title", "first title"), afterRemoteSave);
+        assertEquals(2, search.stats().getLong("rebuilds"));
+    }
+
+    @Test
+    void shouldEvictLeastRecentlySearchedUserOverBudget() {
+        //given
+        TitleSearch search = new TitleSearch(storage, 3, 1_000);
+        save("user1", "one");
+        save("user1", "two");
+        save("user2", "three");
+        save("user2", "four");
+
+        //when
+        search.search("user1", TitleSearch.tokenize("one"), 10);
+        search.search("user2", TitleSearch.tokenize("four"), 10);
+
+        //then
+        assertEquals(1, search.stats().getInteger("users"));
+        assertEquals(2, search.stats().getLong("titles"));
+        assertEquals(1, search.stats().getLong("evictions"));
+    }
+
+    @Test
+    void shouldEvictWhenLocalSavesGrowIndexesOverBudget() {
+        //given
+        TitleSearch search = new TitleSearch(storage, 3, 1_000);
+        save("user1", "one");
+        save("user2", "two");
+        search.search("user1", TitleSearch.tokenize("one"), 10);
+        search.search("user2", TitleSearch.tokenize("two"), 10);
+
+        //when
+        search.saved("user2", save("user2", "three"));
+        search.saved("user2", save("user2", "four"));
+
+        //then
+        assertEquals(1, search.stats().getInteger("users"));
+        assertEquals(3, search.stats().getLong("titles"));
+        assertEquals(1, search.stats().getLong("evictions"));
+    }
+
+    private JsonObject save(String userId, String title) {
+        String id = storage.saveTitle(new JsonObject().put("title", title).put("userId", userId)).result();
+        return new JsonObject().put("_id", id).put("title", title);
+    }
+
+    private static List<String> titlesOf(List<JsonObject> items) {
+        List<String> titles = new ArrayList<>();
+        items.forEach(item -> titles.add(item.getString("title")));
+        return titles;
+    }
+}
@@ -0,0 +1,152 @@
+package com.code.block.rest_service;
+
+import com.code.block.rest_service.repository.TitleWriteBatcher;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.BulkOperation;
+import io.vertx.ext.mongo.MongoClient;
+import io.vertx.ext.mongo.MongoClientBulkWriteResult;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+@ExtendWith(VertxExtension.class)
+@ExtendWith(MockitoExtension.class)
+class TestTitleWriteBatcher {
+
+    @Mock
+    MongoClient mongoClient;
+
+    @Test
+    void shouldFlushFullBatchAsSingleBulkWrite(Vertx vertx, VertxTestContext testContext) {
+        //given
+        TitleWriteBatcher batcher = new TitleWriteBatcher(vertx, mongoClient, 10_000, 3);
+
+        //when
+        Mockito.doAnswer(invocation -> {
+            List<BulkOperation> operations = invocation.getArgument(1);
+            Handler<AsyncResult<MongoClientBulkWriteResult>> handler = invocation.getArgument(3);
+            handler.handle(Future.succeededFuture(new MongoClientBulkWriteResult(operations.size(), 0, 0, 0, List.of())));
+            return mongoClient;
+        }).when(mongoClient).bulkWriteWithOptions(eq("titles"), any(), any(), any());
+
+        //then
+        CompositeFuture.all(
+                batcher.insert(new JsonObject().put("title", "title1")),
+                batcher.insert(new JsonObject().put("title", "title2")),
+                batcher.insert(new JsonObject().put("title", "title3")))
+                .onComplete(testContext.succeeding(result -> testContext.verify(() -> {
+                    Set<String> ids = result.<String>list().stream().collect(Collectors.toSet());
+                    assertEquals(3, ids.size());
+                    assertEquals(1, batcher.stats().getLong("batches"));
+                    assertEquals(3, batcher.stats().getLong("maxBatchSize"));
+                    assertEquals(0, batcher.queueDepth());
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldFlushPartialBatchAfterInterval(Vertx vertx, VertxTestContext testContext) {
+        //given
+        TitleWriteBatcher batcher = new TitleWriteBatcher(vertx, mongoClient, 5, 100);
+
+        //when
+        Mockito.doAnswer(invocation -> {
+            Handler<AsyncResult<MongoClientBulkWriteResult>> handler = invocation.getArgument(3);
+            handler.handle(Future.failedFuture(new IllegalStateException("Mongo unavailable")));
+            return mongoClient;
+        }).when(mongoClient).bulkWriteWithOptions(eq("titles"), any(), any(), any());
+
+        //then
+        batcher.insert(new JsonObject().put("title", "title1"))
+                .onComplete(testContext.failing(cause -> testContext.verify(() -> {
+                    assertEquals("Mongo unavailable", cause.getMessage());
+                    assertEquals(1, batcher.stats().getLong("documents"));
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldRaiseTitlesVersionsOncePerBatchGroupedByUser(Vertx vertx, VertxTestContext testContext) {
+        //given
+        TitleWriteBatcher batcher = new TitleWriteBatcher(vertx, mongoClient, 10_000, 3);
+        AtomicInteger versionWrites = new AtomicInteger();
+
+        //when
+        Mockito.doAnswer(invocation -> {
+            List<BulkOperation> operations = invocation.getArgument(1);
+            Handler<AsyncResult<MongoClientBulkWriteResult>> handler = invocation.getArgument(3);
+            handler.handle(Future.succeededFuture(new MongoClientBulkWriteResult(operations.size(), 0, 0, 0, List.of())));
+            return mongoClient;
+        }).when(mongoClient).bulkWriteWithOptions(eq("titles"), any(), any(), any());
+        Mockito.doAnswer(invocation -> {
+            List<BulkOperation> operations = invocation.getArgument(1);
+            Handler<AsyncResult<MongoClientBulkWriteResult>> handler = invocation.getArgument(3);
+            if (versionWrites.incrementAndGet() == 1) {
+                handler.handle(Future.failedFuture(new IllegalStateException("Mongo unavailable")));
+                return mongoClient;
+            }
+            Map<String, Long> increments = operations.stream().collect(Collectors.toMap(
+                    operation -> operation.getFilter().getString("_id"),
+                    operation -> operation.getDocument().getJsonObject("$inc").getLong("titlesVersion")));
+            testContext.verify(() -> assertEquals(Map.of("user1", 2L, "user2", 1L), increments));
+            handler.handle(Future.succeededFuture(new MongoClientBulkWriteResult(0, 2, 2, 0, List.of())));
+            return mongoClient;
+        }).when(mongoClient).bulkWriteWithOptions(eq("users"), any(), any(), any());
+
+        //then
+        CompositeFuture.all(
+                batcher.insert(new JsonObject().put("title", "title1").put("userId", "user1")),
+                batcher.insert(new JsonObject().put("title", "title2").put("userId", "user2")),
+                batcher.insert(new JsonObject().put("title", "title3").put("userId", "user1")))
+                .onComplete(testContext.succeeding(result -> testContext.verify(() -> {
+                    assertEquals(2, versionWrites.get());
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldFailSavesWhenTitlesVersionCannotBeRaised(Vertx vertx, VertxTestContext testContext) {
+        //given
+        TitleWriteBatcher batcher = new TitleWriteBatcher(vertx, mongoClient, 5, 100);
+
+        //when
+        Mockito.doAnswer(invocation -> {
+            List<BulkOperation> operations = invocation.getArgument(1);
+            Handler<AsyncResult<MongoClientBulkWriteResult>> handler = invocation.getArgument(3);
+            handler.handle(Future.succeededFuture(new MongoClientBulkWriteResult(operations.size(), 0, 0, 0, List.of())));
+            return mongoClient;
+        }).when(mongoClient).bulkWriteWithOptions(eq("titles"), any(), any(), any());
+        Mockito.doAnswer(invocation -> {
+            Handler<AsyncResult<MongoClientBulkWriteResult>> handler = invocation.getArgument(3);
+            handler.handle(Future.failedFuture(new IllegalStateException("Mongo unavailable")));
+            return mongoClient;
+        }).when(mongoClient).bulkWriteWithOptions(eq("users"), any(), any(), any());
+
+        //then
+        batcher.insert(new JsonObject().put("title", "title1").put("userId", "user1"))
+                .onComplete(testContext.failing(cause -> testContext.verify(() -> {
+                    assertEquals("Mongo unavailable", cause.getMessage());
+                    Mockito.verify(mongoClient, Mockito.times(3)).bulkWriteWithOptions(eq("users"), any(), any(), any());
+                    testContext.completeNow();
+                })));
+    }
+}
@@ -0,0 +1,176 @@
+package com.code.block.rest_service;
+
+import com.code.block.rest_service.metrics.Metrics;
+import com.code.block.rest_service.repository.InMemoryStorage;
+import com.code.block.rest_service.repository.Storage;
+import com.code.block.rest_service.service.AdmissionControl;
+import com.code.block.rest_service.service.BloomFilter;
+import com.code.block.rest_service.service.HealthCheck;
+import com.code.block.rest_service.service.ItemFeed;
+import com.code.block.rest_service.service.PasswordHasher;
+import com.code.block.rest_service.service.RestRouter;
+import com.code.block.rest_service.service.RestService;
+import com.code.block.rest_service.service.TitleSearch;
+import com.code.block.rest_service.service.TokenIssuer;
+import com.code.block.rest_service.service.TokenRevocations;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.JWTOptions;
+import io.vertx.ext.auth.PubSecKeyOptions;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.ext.web.handler.impl.JWTAuthHandlerImpl;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+class TestTokenRevocations {
+
+    @Test
+    void shouldNeverMissAddedItemsAndKeepFalsePositivesNearRate() {
+        //given
+        BloomFilter filter = new BloomFilter(1_000, 0.01);
+
+        //when
+        for (int i = 0; i < 1_000; i++) {
+            filter.add("revoked-" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("valid-" + i)) {
+                falsePositives++;
+            }
+        }
+
+        //then
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(filter.mightContain("revoked-" + i));
+        }
+        assertTrue(falsePositives < 300, "false positives " + falsePositives);
+    }
+
+    @Test
+    void shouldShareRevocationsOverEventBusAndRestoreThem(Vertx vertx, VertxTestContext testContext) {
+        //given
+        Storage storage = new InMemoryStorage();
+        TokenRevocations first = new TokenRevocations(vertx, storage, 100, 0.01, 0);
+        TokenRevocations second = new TokenRevocations(vertx, storage, 100, 0.01, 0);
+
+        //when
+        first.revoke("jti-1", System.currentTimeMillis() + 60_000)
+                .compose(v -> {
+                    Promise<Void> delivered = Promise.promise();
+                    vertx.setTimer(50, id -> delivered.complete());
+                    return delivered.future();
+                })
+                .compose(v -> {
+                    TokenRevocations restarted = new TokenRevocations(null, storage, 100, 0.01, 0);
+                    return restarted.load().map(restarted);
+                })
+                .onComplete(testContext.succeeding(restarted -> testContext.verify(() -> {
+                    //then
+                    assertTrue(first.isRevoked("jti-1"));
+                    assertTrue(second.isRevoked("jti-1"));
+                    assertTrue(restarted.isRevoked("jti-1"));
+                    assertFalse(second.isRevoked("jti-2"));
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldPruneRevocationsOfExpiredTokens(Vertx vertx, VertxTestContext testContext) {
+        //given
+        Storage storage = new InMemoryStorage();
+        TokenRevocations revocations = new TokenRevocations(null, storage, 100, 0.01, 0);
+        long now = System.currentTimeMillis();
+
+        //when
+        revocations.revoke("expiring", now + 20)
+                .compose(v -> revocations.revoke("lasting", now + 60_000))
+                .compose(v -> revocations.revoke("forever", TokenRevocations.NEVER_EXPIRES))
+                .compose(v -> {
+                    Promise<Void> expired = Promise.promise();
+                    vertx.setTimer(50, id -> expired.complete());
+                    return expired.future();
+                })
+                .onComplete(testContext.succeeding(v -> testContext.verify(() -> {
+                    //then
+                    assertEquals(1, revocations.prune());
+                    assertFalse(revocations.isRevoked("expiring"));
+                    assertTrue(revocations.isRevoked("lasting"));
+                    assertTrue(revocations.isRevoked("forever"));
+                    assertEquals(2, revocations.stats().getLong("revoked"));
+                    assertEquals(1, revocations.stats().getLong("pruned"));
+                    assertEquals(2, storage.getRevokedTokens().result().size());
+                    testContext.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldRejectTokenAfterLogout(Vertx vertx, VertxTestContext testContext) {
+        //given
+        HttpClient client = vertx.createHttpClient();
+        JWTAuth jwtProvider = JWTAuth.create(vertx, new JWTAuthOptions()
+                .addPubSecKey(new PubSecKeyOptions().setAlgorithm("HS256").setBuffer("secret")));
+        Storage storage = new InMemoryStorage();
+        RestRouter restRouter = new RestRouter(new JWTAuthHandlerImpl(jwtProvider, null),
+                new TokenIssuer(vertx, jwtProvider, new JWTOptions().setExpiresInSeconds(60), 1, 10),
+                new PasswordHasher(vertx, 1, 10, 1, 1_000), storage, new Metrics(), AdmissionControl.unlimited(),
+                HealthCheck.alwaysReady(), new TokenRevocations(vertx, storage, 100, 0.01, 0),
+                new ItemFeed(null, 10, 10, 65_536, 0), new TitleSearch(storage, 1_000, 1_000));
+        JsonObject credentials = new JsonObject().put("login", "user").put("password", "password");
+        String[] token = new String[1];
+
+        //when
+        vertx.deployVerticle(new RestService(restRouter))
+                .compose(id -> send(client, HttpMethod.POST, "/register", null, credentials))
+                .compose(registered -> send(client, HttpMethod.POST, "/login", null, credentials))
+                .compose(response -> response.body())
+                .compose(body -> {
+                    token[0] = body.toJsonObject().getString("token");
+                    return send(client, HttpMethod.GET, "/items", token[0], null);
+                })
+                .compose(items -> {
+                    assertEquals(200, items.statusCode());
+                    return send(client, HttpMethod.POST, "/logout", token[0], null);
+                })
+                .compose(logout -> {
+                    assertEquals(200, logout.statusCode());
+                    return send(client, HttpMethod.GET, "/items", token[0], null);
+                })
+                .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+                    //then
+                    assertEquals(403, response.statusCode());
+                    Map<String, Long> revoked = storage.getRevokedTokens().result();
+                    assertEquals(1, revoked.size());
+                    long expiresAt = revoked.values().iterator().next();
+                    assertTrue(expiresAt > System.currentTimeMillis() && expiresAt <= System.currentTimeMillis() + 60_000,
+                            "revocation expires at " + expiresAt);
+                    testContext.completeNow();
+                })));
+    }
+
+    private static Future<HttpClientResponse> send(HttpClient client, HttpMethod method, String path, String token,
+                                                   JsonObject body) {
+        return client.request(method, 8888, "localhost", path)
+                .compose(req -> {
+                    if (token != null) {
+                        req.putHeader("Authorization", "Bearer " + token);
+                    }
+                    return body == null ? req.send() : req.send(body.toBuffer());
+                });
+    }
+}
@@ -0,0 +1,276 @@
+package com.code.block.rest_service.load;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.RequestOptions;
+import io.vertx.core.json.JsonObject;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-model load generator. Requests are started on a fixed schedule no matter how long earlier ones take, and each
+ * latency is measured from the scheduled start rather than from the moment the request was sent. A server that stalls
+ * therefore shows up as higher latency instead of as a lower request rate (no coordinated omission).
+ */
+@Slf4j
+public class LoadGenerator {
+    private static final String PASSWORD = "load-password";
+    private static final long REQUEST_TIMEOUT_MS = 30_000;
+
+    public enum Route {
+        REGISTER("POST /register"),
+        LOGIN("POST /login"),
+        SAVE_ITEM("POST /items"),
+        GET_ITEMS("GET /items");
+
+        private final String label;
+
+        Route(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private final Context context;
+    private final HttpClient client;
+    private final int ratePerSecond;
+    private final int users;
+    private final Route[] routes;
+    private final int[] cumulativeWeights;
+    private final Map<Route, Histogram> latencies = new EnumMap<>(Route.class);
+    private final Map<Route, LongAdder> errors = new EnumMap<>(Route.class);
+    private final List<String> logins = new ArrayList<>();
+    private final List<String> tokens = new ArrayList<>();
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile long measuredNanos;
+    private volatile long maxSchedulerLagNanos;
+
+    /**
+     * @param mix relative weight of every route, e.g. {@code GET_ITEMS=75} and {@code SAVE_ITEM=25}
+     */
+    public LoadGenerator(Vertx vertx, String host, int port, int ratePerSecond, int connections, int users, Map<Route, Integer> mix) {
+        this(vertx, new HttpClientOptions()
+                .setDefaultHost(host)
+                .setDefaultPort(port)
+                .setMaxPoolSize(connections), ratePerSecond, users, mix);
+    }
+
+    /**
+     * @param clientOptions target, pool size and protocol of the client, e.g. HTTP/2 or {@code Accept-Encoding}
+     */
+    public LoadGenerator(Vertx vertx, HttpClientOptions clientOptions, int ratePerSecond, int users, Map<Route, Integer> mix) {
+        if (ratePerSecond <= 0 || users <= 0) {
+            throw new IllegalArgumentException("Rate and users have to be positive");
+        }
+        this.context = vertx.getOrCreateContext();
+        this.client = vertx.createHttpClient(clientOptions);
+        this.ratePerSecond = ratePerSecond;
+        this.users = users;
+        this.routes = mix.keySet().toArray(new Route[0]);
+        this.cumulativeWeights = new int[routes.length];
+        int total = 0;
+        for (int i = 0; i < routes.length; i++) {
+            total += mix.get(routes[i]);
+            cumulativeWeights[i] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Route mix has no weight");
+        }
+        for (Route route : Route.values()) {
+            latencies.put(route, new ConcurrentHistogram(3));
+            errors.put(route, new LongAdder());
+        }
+    }
+
+    /**
+     * Registers the users that the authenticated routes act as and logs each of them in once.
+     */
+    public Future<Void> prepare() {
+        List<Future<String>> logged = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            String login = "load-" + runId + "-user" + i;
+            logged.add(send(HttpMethod.POST, "/register", null, credentials(login))
+                    .compose(body -> send(HttpMethod.POST, "/login", null, credentials(login)))
+                    .map(body -> new JsonObject(body).getString("token"))
+                    .onSuccess(token -> {
+                        synchronized (tokens) {
+                            logins.add(login);
+                            tokens.add(token);
+                        }
+                    }));
+        }
+        return CompositeFuture.all(new ArrayList<>(logged)).mapEmpty();
+    }
+
+    /**
+     * Sends requests at the configured rate for {@code warmup + duration}. Only requests scheduled after the warm-up
+     * are recorded. The future completes once every request sent has been answered.
+     */
+    public Future<Void> run(Duration warmup, Duration duration) {
+        Promise<Void> done = Promise.promise();
+        Thread scheduler = new Thread(() -> schedule(warmup.toNanos(), duration.toNanos(), done), "load-generator");
+        scheduler.setDaemon(true);
+        scheduler.start();
+        return done.future();
+    }
+
+    public Histogram getLatency(Route route) {
+        return latencies.get(route);
+    }
+
+    public long getErrors(Route route) {
+        return errors.get(route).sum();
+    }
+
+    /**
+     * @return throughput and latency percentiles per route, in milliseconds, measured from the scheduled start
+     */
+    public String report() {
+        double seconds = measuredNanos / 1e9;
+        long completed = 0;
+        StringBuilder routeLines = new StringBuilder();
+        for (Route route : Route.values()) {
+            Histogram histogram = latencies.get(route);
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            completed += histogram.getTotalCount();
+            routeLines.append(String.format("%-16s %9d %8d %9.1f %9.2f %9.2f %9.2f %9.2f%n", route,
+                    histogram.getTotalCount(), getErrors(route), histogram.getTotalCount() / seconds,
+                    millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMaxValue())));
+        }
+        return String.format("Target %d req/s, achieved %.1f req/s over %.1f s, max scheduler lag %.2f ms%n",
+                ratePerSecond, completed / seconds, seconds, millis(maxSchedulerLagNanos))
+                + String.format("%-16s %9s %8s %9s %9s %9s %9s %9s%n",
+                "route", "count", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms")
+                + routeLines;
+    }
+
+    public Future<Void> close() {
+        return client.close();
+    }
+
+    private void schedule(long warmupNanos, long durationNanos, Promise<Void> done) {
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        double intervalNanos = 1e9 / ratePerSecond;
+        inFlight.incrementAndGet();
+        for (long i = 0; ; i++) {
+            long intendedStart = start + (long) (i * intervalNanos);
+            if (intendedStart >= end) {
+                break;
+            }
+            long wait = intendedStart - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else if (intendedStart >= measureFrom) {
+                maxSchedulerLagNanos = Math.max(maxSchedulerLagNanos, -wait);
+            }
+            inFlight.incrementAndGet();
+            Route route = nextRoute();
+            // requests sent from this thread would each get a new context, which leaves requests queued for a pooled
+            // connection stranded, so they are all sent from the context of the generator
+            context.runOnContext(v -> request(route).onComplete(ar -> {
+                if (intendedStart >= measureFrom) {
+                    latencies.get(route).recordValue(System.nanoTime() - intendedStart);
+                    if (ar.failed()) {
+                        errors.get(route).increment();
+                    }
+                }
+                finished(done);
+            }));
+        }
+        measuredNanos = durationNanos;
+        finished(done);
+    }
+
+    private void finished(Promise<Void> done) {
+        if (inFlight.decrementAndGet() == 0) {
+            done.complete();
+        }
+    }
+
+    private Route nextRoute() {
+        int pick = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return routes[i];
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private Future<String> request(Route route) {
+        int user = ThreadLocalRandom.current().nextInt(tokens.size());
+        switch (route) {
+            case REGISTER:
+                return send(HttpMethod.POST, "/register", null, credentials("load-" + runId + "-" + sequence.incrementAndGet()));
+            case LOGIN:
+                return send(HttpMethod.POST, "/login", null, credentials(logins.get(user)));
+            case SAVE_ITEM:
+                return send(HttpMethod.POST, "/items", tokens.get(user),
+                        new JsonObject().put("title", "title-" + sequence.incrementAndGet()));
+            case GET_ITEMS:
+                return send(HttpMethod.GET, "/items", tokens.get(user), null);
+            default:
+                throw new IllegalArgumentException(route.name());
+        }
+    }
+
+    private Future<String> send(HttpMethod method, String uri, String token, JsonObject body) {
+        RequestOptions options = new RequestOptions().setMethod(method).setURI(uri).setTimeout(REQUEST_TIMEOUT_MS);
+        if (token != null) {
+            options.putHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+        }
+        return client.request(options)
+                .compose(request -> body == null ? request.send() : request.send(body.toBuffer()))
+                .compose(response -> response.body().compose(buffer -> checkStatus(method, uri, response, buffer)));
+    }
+
+    private static Future<String> checkStatus(HttpMethod method, String uri, HttpClientResponse response, Buffer body) {
+        if (response.statusCode() / 100 != 2) {
+            log.debug("{} {} answered {} {}", method, uri, response.statusCode(), response.statusMessage());
+            return Future.failedFuture(method + " " + uri + " answered " + response.statusCode() + " " + response.statusMessage());
+        }
+        return Future.succeededFuture(body.toString());
+    }
+
+    private static JsonObject credentials(String login) {
+        return new JsonObject().put("login", login).put("password", PASSWORD);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,91 @@
+package com.code.block.rest_service.load;
+
+import com.code.block.rest_service.RestServiceFactory;
+import com.code.block.rest_service.load.LoadGenerator.Route;
+import com.code.block.rest_service.service.RestService;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpVersion;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Starts the service in-process through {@link RestServiceFactory} and drives it with a {@link LoadGenerator}.
+ * Storage defaults to {@code memory} and signing to HS256 so no MongoDB or keystore is needed, and the per-address
+ * rate limit is off; any {@code rest.*} property still applies.
+ * Run with {@code mvn -Pload -DskipTests verify -Dload.args="-Dload.rate=2000"}.
+ * <ul>
+ *   <li>{@code load.rate} - requests started per second (default 500)</li>
+ *   <li>{@code load.warmupSec} - seconds of load that are not recorded (default 10)</li>
+ *   <li>{@code load.durationSec} - seconds of recorded load (default 30)</li>
+ *   <li>{@code load.users} - users registered up front for login and items (default 50)</li>
+ *   <li>{@code load.connections} - HTTP connections to the service (default 64)</li>
+ *   <li>{@code load.http2} - send the requests over HTTP/2 cleartext connections (default false)</li>
+ *   <li>{@code load.compression} - ask for compressed responses and decompress them (default false)</li>
+ *   <li>{@code load.mix} - route weights (default {@code REGISTER=1,LOGIN=4,SAVE_ITEM=20,GET_ITEMS=75})</li>
+ * </ul>
+ */
+public class LoadRunner {
+
+    public static void main(String[] args) throws Exception {
+        setDefault(RestServiceFactory.STORAGE_PROPERTY, "memory");
+        setDefault(RestServiceFactory.JWT_ALGORITHM_PROPERTY, "HS256");
+        setDefault(RestServiceFactory.JWT_SECRET_PROPERTY, "load-test-secret");
+        // every simulated user connects from the same address, which the per-address limit would throttle
+        setDefault(RestServiceFactory.ANONYMOUS_RATE_PROPERTY, "0");
+
+        Vertx vertx = Vertx.vertx();
+        RestServiceFactory factory = new RestServiceFactory(vertx);
+        LoadGenerator generator = new LoadGenerator(vertx, clientOptions(),
+                Integer.getInteger("load.rate", 500),
+                Integer.getInteger("load.users", 50),
+                parseMix(System.getProperty("load.mix", "REGISTER=1,LOGIN=4,SAVE_ITEM=20,GET_ITEMS=75")));
+        try {
+            factory.bootstrap()
+                    .compose(v -> vertx.deployVerticle(factory::buildRestService, factory.getDeploymentOptions()))
+                    .compose(id -> factory.warmUp())
+                    .compose(v -> generator.prepare())
+                    .compose(v -> generator.run(
+                            Duration.ofSeconds(Long.getLong("load.warmupSec", 10)),
+                            Duration.ofSeconds(Long.getLong("load.durationSec", 30))))
+                    .toCompletionStage()
+                    .toCompletableFuture()
+                    .get();
+            System.out.print(generator.report());
+        } finally {
+            vertx.close().toCompletionStage().toCompletableFuture().get();
+        }
+    }
+
+    private static HttpClientOptions clientOptions() {
+        int connections = Integer.getInteger("load.connections", 64);
+        HttpClientOptions options = new HttpClientOptions()
+                .setDefaultHost("localhost")
+                .setDefaultPort(RestService.HTTP_SERVER_PORT)
+                .setMaxPoolSize(connections)
+                .setTryUseCompression(Boolean.getBoolean("load.compression"));
+        if (Boolean.getBoolean("load.http2")) {
+            options.setProtocolVersion(HttpVersion.HTTP_2)
+                    .setHttp2ClearTextUpgrade(false)
+                    .setHttp2MaxPoolSize(connections);
+        }
+        return options;
+    }
+
+    static Map<Route, Integer> parseMix(String mix) {
+        Map<Route, Integer> weights = new EnumMap<>(Route.class);
+        for (String entry : mix.split(",")) {
+            String[] weight = entry.split("=");
+            weights.put(Route.valueOf(weight[0].trim()), Integer.parseInt(weight[1].trim()));
+        }
+        return weights;
+    }
+
+    private static void setDefault(String property, String value) {
+        if (System.getProperty(property) == null) {
+            System.setProperty(property, value);
+        }
+    }
+}